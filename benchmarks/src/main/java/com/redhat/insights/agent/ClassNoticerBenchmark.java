@@ -0,0 +1,73 @@
+/* Copyright (C) Red Hat 2026 */
+package com.redhat.insights.agent;
+
+import com.redhat.insights.jars.JarInfo;
+import java.net.URL;
+import java.security.CodeSource;
+import java.security.ProtectionDomain;
+import java.security.cert.Certificate;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Latency of {@link ClassNoticer#transform}, which runs on every class load while the agent is
+ * attached.
+ *
+ * <ul>
+ *   <li>{@code seen}: the class comes from a code source already noticed - the common case
+ *   <li>{@code unseenCodeSource}: a new code source for a jar already noticed, as when a class
+ *       loader is created for an existing jar
+ *   <li>{@code contended}: the {@code seen} path from many threads at once
+ * </ul>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ClassNoticerBenchmark {
+  private static final byte[] BYTES = new byte[0];
+
+  private ClassNoticer noticer;
+  private ProtectionDomain seenDomain;
+  private URL seenLocation;
+
+  @Setup
+  public void setup() {
+    noticer = new ClassNoticer(new LinkedBlockingQueue<JarInfo>());
+    // Any class from a jar will do
+    seenDomain = Benchmark.class.getProtectionDomain();
+    seenLocation = seenDomain.getCodeSource().getLocation();
+    noticer.notice(seenDomain);
+  }
+
+  @Benchmark
+  public byte[] seen() throws Exception {
+    return noticer.transform(null, "org/example/Seen", null, seenDomain, BYTES);
+  }
+
+  @Benchmark
+  public byte[] unseenCodeSource() throws Exception {
+    ProtectionDomain domain =
+        new ProtectionDomain(new CodeSource(seenLocation, (Certificate[]) null), null);
+    return noticer.transform(null, "org/example/Unseen", null, domain, BYTES);
+  }
+
+  @Benchmark
+  @Threads(8)
+  public byte[] contended() throws Exception {
+    return noticer.transform(null, "org/example/Seen", null, seenDomain, BYTES);
+  }
+}
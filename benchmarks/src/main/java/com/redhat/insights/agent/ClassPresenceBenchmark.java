@@ -0,0 +1,57 @@
+/* Copyright (C) Red Hat 2026 */
+package com.redhat.insights.agent;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of checking for a class that isn't there, as workload fingerprinting mostly does: an
+ * uncached and a cached {@link ClassPresence} probe, against the {@link Class#forName(String)} it
+ * replaced.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ClassPresenceBenchmark {
+  private static final String MISSING = "org.example.NotOnTheClasspath";
+
+  private ClassPresence cached;
+
+  @Setup
+  public void setup() {
+    cached = new ClassPresence(getClass().getClassLoader());
+    cached.isPresent(MISSING);
+  }
+
+  @Benchmark
+  public boolean forNameMiss() {
+    try {
+      Class.forName(MISSING);
+      return true;
+    } catch (ClassNotFoundException e) {
+      return false;
+    }
+  }
+
+  @Benchmark
+  public boolean presenceMiss() {
+    return new ClassPresence(getClass().getClassLoader()).isPresent(MISSING);
+  }
+
+  @Benchmark
+  public boolean cachedPresenceMiss() {
+    return cached.isPresent(MISSING);
+  }
+}
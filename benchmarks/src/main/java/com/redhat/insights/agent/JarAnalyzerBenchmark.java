@@ -0,0 +1,93 @@
+/* Copyright (C) Red Hat 2026 */
+package com.redhat.insights.agent;
+
+import com.redhat.insights.jars.JarAnalyzer;
+import com.redhat.insights.jars.JarInfo;
+import java.io.OutputStream;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of analyzing a single jar, across jar sizes: the full {@link JarAnalyzer} (open, read
+ * the manifest and hash), and a {@link CachingJarAnalyzer} hit, which skips all of that.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JarAnalyzerBenchmark {
+  // The analyzer skips jars under java.io.tmpdir, so keep them in the build directory
+  private static final Path DIR = Paths.get("target", "bench-jars");
+  private static final int ENTRY_SIZE = 4096;
+
+  @Param({"10", "100", "1000"})
+  public int entries;
+
+  private URL jar;
+  private JarAnalyzer analyzer;
+  private CachingJarAnalyzer cachingAnalyzer;
+
+  @Setup(Level.Trial)
+  public void setup() throws Exception {
+    Files.createDirectories(DIR);
+    Path path = DIR.resolve("bench-" + entries + ".jar");
+    writeJar(path, entries);
+    jar = path.toUri().toURL();
+    analyzer = new JarAnalyzer(AgentLogger.getLogger(), true);
+    Path cacheDir = Files.createDirectories(DIR.resolve("cache-" + entries));
+    Files.deleteIfExists(cacheDir.resolve(JarFingerprintCache.CACHE_FILE_NAME));
+    cachingAnalyzer = new CachingJarAnalyzer(JarFingerprintCache.load(cacheDir));
+    // Warm the cache
+    cachingAnalyzer.process(jar);
+  }
+
+  @Benchmark
+  public Optional<JarInfo> analyze() throws Exception {
+    return analyzer.process(jar);
+  }
+
+  @Benchmark
+  public Optional<JarInfo> cachedAnalyze() throws Exception {
+    return cachingAnalyzer.process(jar);
+  }
+
+  private static void writeJar(Path path, int entries) throws Exception {
+    Manifest manifest = new Manifest();
+    manifest.getMainAttributes().putValue("Manifest-Version", "1.0");
+    manifest.getMainAttributes().putValue("Implementation-Title", "bench");
+    manifest.getMainAttributes().putValue("Implementation-Version", "1.0");
+    Random random = new Random(entries);
+    byte[] content = new byte[ENTRY_SIZE];
+    try (OutputStream file = Files.newOutputStream(path);
+        JarOutputStream out = new JarOutputStream(file, manifest)) {
+      for (int i = 0; i < entries; i++) {
+        out.putNextEntry(new JarEntry("bench/Entry" + i + ".class"));
+        random.nextBytes(content);
+        out.write(content);
+        out.closeEntry();
+      }
+    }
+  }
+}
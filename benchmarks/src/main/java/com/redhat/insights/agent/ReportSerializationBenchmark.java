@@ -0,0 +1,109 @@
+/* Copyright (C) Red Hat 2026 */
+package com.redhat.insights.agent;
+
+import com.redhat.insights.Filtering;
+import com.redhat.insights.http.InsightsHttpClient;
+import com.redhat.insights.jars.JarAnalyzer;
+import com.redhat.insights.jars.JarInfo;
+import com.redhat.insights.reports.InsightsReport;
+import com.redhat.insights.reports.UpdateReportImpl;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import org.apache.http.entity.ContentType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Cost of turning a report of a given number of jars into an upload: serializing to JSON, gzipping
+ * the serialized bytes, and the streaming {@link GzipReportBody} the HTTP client uses.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ReportSerializationBenchmark {
+
+  @Param({"100", "1000", "5000"})
+  public int jars;
+
+  private InsightsReport report;
+  private GzipReportBody body;
+
+  @Setup
+  public void setup() {
+    LinkedBlockingQueue<JarInfo> queue = new LinkedBlockingQueue<>();
+    for (int i = 0; i < jars; i++) {
+      Map<String, String> attributes = new HashMap<>();
+      attributes.put(JarAnalyzer.SHA1_CHECKSUM_KEY, hex(i, 40));
+      attributes.put(JarAnalyzer.SHA256_CHECKSUM_KEY, hex(i, 64));
+      attributes.put(JarAnalyzer.SHA512_CHECKSUM_KEY, hex(i, 128));
+      queue.add(new JarInfo("library-" + i + ".jar", "1.0." + i, attributes));
+    }
+    UpdateReportImpl updateReport = new UpdateReportImpl(queue, AgentLogger.getLogger());
+    updateReport.setIdHash("benchmark");
+    updateReport.generateReport(Filtering.DEFAULT);
+    report = updateReport;
+    body =
+        new GzipReportBody(
+            report, ContentType.create(InsightsHttpClient.GENERAL_MIME_TYPE), "benchmark");
+  }
+
+  @Benchmark
+  public byte[] serialize() {
+    return report.serializeRaw();
+  }
+
+  @Benchmark
+  public byte[] serializeAndGzip() {
+    return InsightsHttpClient.gzipReport(report.serializeRaw());
+  }
+
+  @Benchmark
+  public void streamingGzip(Blackhole blackhole) throws IOException {
+    body.writeTo(new BlackholeOutputStream(blackhole));
+  }
+
+  private static String hex(int seed, int length) {
+    StringBuilder out = new StringBuilder(length);
+    long value = seed * 0x9E3779B97F4A7C15L;
+    while (out.length() < length) {
+      value = value * 6364136223846793005L + 1442695040888963407L;
+      out.append(Long.toHexString(value));
+    }
+    return out.substring(0, length);
+  }
+
+  private static final class BlackholeOutputStream extends OutputStream {
+    private final Blackhole blackhole;
+
+    private BlackholeOutputStream(Blackhole blackhole) {
+      this.blackhole = blackhole;
+    }
+
+    @Override
+    public void write(int b) {
+      blackhole.consume(b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+      blackhole.consume(b);
+    }
+  }
+}
@@ -0,0 +1,114 @@
+/* Copyright (C) Red Hat 2026 */
+package com.redhat.insights.agent;
+
+import static com.redhat.insights.InsightsErrorCode.ERROR_GENERATING_HASH;
+
+import com.redhat.insights.InsightsException;
+import com.redhat.insights.jars.JarAnalyzer;
+import com.redhat.insights.jars.JarInfo;
+import com.redhat.insights.jars.JarInfoSubreport;
+import com.redhat.insights.reports.InsightsReport;
+import com.redhat.insights.reports.InsightsSubreport;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The SHA-512s of the jars the server is known to hold for this JVM: the jars in the last full
+ * report it accepted, plus any accepted in updates since. Delta reports are computed against this.
+ * It is only ever updated after a successful upload, so anything that wasn't accepted is sent
+ * again.
+ *
+ * <p>The classpath jars of the last accepted full report are also kept apart. Updates carry jars
+ * noticed as classes load, most of which aren't on the classpath, so only the classpath jars can be
+ * reported as removed when they are missing from the next full report.
+ */
+final class AcceptedJars {
+  // Replaced rather than modified, so readers can use a snapshot without locking
+  private volatile Set<String> hashes = Collections.emptySet();
+  // Null until a full report has been accepted
+  private volatile Set<String> classpathHashes = null;
+
+  /** @return the accepted hashes, which won't change under the caller */
+  Set<String> snapshot() {
+    return hashes;
+  }
+
+  /**
+   * @return the classpath jars of the last accepted full report, which won't change under the
+   *     caller, or null if none has been accepted
+   */
+  Set<String> classpathSnapshot() {
+    return classpathHashes;
+  }
+
+  /**
+   * Records the jars in a report the server has accepted. A full report replaces what was known
+   * with the set it says the server now holds, so that removed jars are forgotten. An update adds
+   * to it.
+   *
+   * @param report a report that was accepted
+   */
+  synchronized void accepted(InsightsReport report) {
+    for (InsightsSubreport subreport : report.getSubreports().values()) {
+      if (subreport instanceof DeltaJarInfoSubreport) {
+        DeltaJarInfoSubreport full = (DeltaJarInfoSubreport) subreport;
+        DeltaJarInfoSubreport.Delta delta = full.getDelta();
+        // Not generated, so all that is known is the jars themselves
+        Set<String> current =
+            delta.current != null ? delta.current : hashesOf(full.getJarInfos());
+        classpathHashes = Collections.unmodifiableSet(current);
+        hashes = Collections.unmodifiableSet(delta.result != null ? delta.result : current);
+      } else if (subreport instanceof JarInfoSubreport) {
+        Set<String> updated = new HashSet<>(hashes);
+        updated.addAll(hashesOf(((JarInfoSubreport) subreport).getJarInfos()));
+        hashes = Collections.unmodifiableSet(updated);
+      }
+    }
+  }
+
+  /** @return the SHA-512 of the jar, or null if it couldn't be computed */
+  static String sha512(JarInfo jarInfo) {
+    return jarInfo.attributes().get(JarAnalyzer.SHA512_CHECKSUM_KEY);
+  }
+
+  static Set<String> hashesOf(Collection<JarInfo> jarInfos) {
+    Set<String> out = new HashSet<>();
+    for (JarInfo jarInfo : jarInfos) {
+      String sha512 = sha512(jarInfo);
+      if (sha512 != null) {
+        out.add(sha512);
+      }
+    }
+    return out;
+  }
+
+  /**
+   * @param hashes a set of jar hashes
+   * @return a SHA-256 over the sorted hashes, so both ends can check they agree on the full set
+   */
+  static String digest(Collection<String> hashes) {
+    List<String> sorted = new ArrayList<>(hashes);
+    Collections.sort(sorted);
+    try {
+      MessageDigest digest = MessageDigest.getInstance("SHA-256");
+      for (String hash : sorted) {
+        digest.update(hash.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) '\n');
+      }
+      StringBuilder out = new StringBuilder();
+      for (byte b : digest.digest()) {
+        out.append(String.format("%02x", b));
+      }
+      return out.toString();
+    } catch (NoSuchAlgorithmException e) {
+      throw new InsightsException(ERROR_GENERATING_HASH, "Unable to compute jar set digest", e);
+    }
+  }
+}
@@ -1,8 +1,8 @@
-/* Copyright (C) Red Hat 2023-2024 */
+/* Copyright (C) Red Hat 2023-2026 */
 package com.redhat.insights.agent;
 
+import com.redhat.insights.Filtering;
 import com.redhat.insights.config.InsightsConfiguration;
-import com.redhat.insights.jars.ClasspathJarInfoSubreport;
 import com.redhat.insights.logging.InsightsLogger;
 import com.redhat.insights.reports.AbstractTopLevelReportBase;
 import com.redhat.insights.reports.InsightsSubreport;
@@ -12,17 +12,49 @@ import java.util.Map;
 public class AgentBasicReport extends AbstractTopLevelReportBase {
   private static final InsightsLogger logger = AgentLogger.getLogger();
 
+  private final MemoizedJarInfoSubreport jarsReport;
+
   private AgentBasicReport(
-      InsightsConfiguration config, Map<String, InsightsSubreport> subReports) {
+      InsightsConfiguration config,
+      Map<String, InsightsSubreport> subReports,
+      MemoizedJarInfoSubreport jarsReport) {
     super(logger, config, subReports);
+    this.jarsReport = jarsReport;
   }
 
   public static AgentBasicReport of(AgentConfiguration configuration) {
+    return of(configuration, new CachingJarAnalyzer());
+  }
+
+  static AgentBasicReport of(AgentConfiguration configuration, CachingJarAnalyzer analyzer) {
+    return of(configuration, analyzer, new AcceptedJars());
+  }
+
+  /**
+   * @param acceptedJars the jars the server already has, which delta reports are computed against
+   */
+  static AgentBasicReport of(
+      AgentConfiguration configuration, CachingJarAnalyzer analyzer, AcceptedJars acceptedJars) {
     Map<String, InsightsSubreport> reports = new HashMap<>();
-    ClasspathJarInfoSubreport jarsReport = new ClasspathJarInfoSubreport(logger);
-    reports.put("jars", jarsReport);
+    boolean compact = configuration.isCompactJars();
+    MemoizedJarInfoSubreport jarsReport =
+        new MemoizedJarInfoSubreport(
+            logger,
+            new AgentClasspathJarInfoSubreport(logger, analyzer, configuration.getParallelism()),
+            compact);
+    if (configuration.isDeltaReports()) {
+      reports.put("jars", new DeltaJarInfoSubreport(logger, jarsReport, acceptedJars, compact));
+    } else {
+      reports.put("jars", jarsReport);
+    }
     reports.put("details", AgentSubreport.of(jarsReport, configuration));
-    return new AgentBasicReport(configuration, reports);
+    return new AgentBasicReport(configuration, reports, jarsReport);
+  }
+
+  @Override
+  public void generateReport(Filtering masking) {
+    jarsReport.reset();
+    super.generateReport(masking);
   }
 
   @Override
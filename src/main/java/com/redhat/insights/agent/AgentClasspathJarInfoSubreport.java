@@ -0,0 +1,130 @@
+/* Copyright (C) Red Hat 2026 */
+package com.redhat.insights.agent;
+
+import static com.redhat.insights.InsightsErrorCode.ERROR_GENERATING_ARCHIVE_HASH;
+
+import com.redhat.insights.InsightsException;
+import com.redhat.insights.jars.ClasspathJarInfoSubreport;
+import com.redhat.insights.jars.JarInfo;
+import com.redhat.insights.logging.InsightsLogger;
+import java.io.File;
+import java.net.MalformedURLException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Classpath jars subreport that analyzes jars through a {@link CachingJarAnalyzer}, so that
+ * unchanged jars don't have to be re-hashed on every JVM start. Otherwise this behaves the same as
+ * {@link ClasspathJarInfoSubreport}.
+ *
+ * <p>With a parallelism greater than one, the jars are analyzed on a short-lived pool of that many
+ * threads. Results are still added in classpath order, so the report is the same as a serial scan.
+ */
+public class AgentClasspathJarInfoSubreport extends ClasspathJarInfoSubreport {
+  private static final String CLASSPATH_ENV = "java.class.path";
+  private static final String USER_DIR = "user.dir";
+
+  private final CachingJarAnalyzer analyzer;
+  private final int parallelism;
+
+  AgentClasspathJarInfoSubreport(InsightsLogger logger, CachingJarAnalyzer analyzer) {
+    this(logger, analyzer, 1);
+  }
+
+  AgentClasspathJarInfoSubreport(
+      InsightsLogger logger, CachingJarAnalyzer analyzer, int parallelism) {
+    super(logger);
+    this.analyzer = analyzer;
+    this.parallelism = parallelism;
+  }
+
+  @Override
+  public void generateReport() {
+    String cpRaw = System.getProperty(CLASSPATH_ENV);
+    String[] entries = cpRaw.split(File.pathSeparator);
+    jarInfos.clear();
+    if (entries.length == 0) {
+      logger.warning("No classpath entries found");
+    } else {
+      List<URL> urls = toUrls(entries);
+      int threads = Math.min(parallelism, urls.size());
+      if (threads > 1) {
+        addEntriesInParallel(urls, threads);
+      } else {
+        addEntries(urls);
+      }
+      analyzer.saveCache();
+    }
+  }
+
+  private List<URL> toUrls(String[] entries) {
+    String cwd = System.getProperty(USER_DIR);
+    List<URL> urls = new ArrayList<>(entries.length);
+    for (String entry : entries) {
+      logger.debug(entry);
+      try {
+        if (!entry.startsWith(File.separator)) {
+          entry = cwd + File.separatorChar + entry;
+        }
+        urls.add(Paths.get(entry).toUri().toURL());
+      } catch (MalformedURLException e) {
+        throw new InsightsException(ERROR_GENERATING_ARCHIVE_HASH, "JAR hashing error", e);
+      }
+    }
+    return urls;
+  }
+
+  private void addEntries(List<URL> urls) {
+    for (URL url : urls) {
+      process(url).ifPresent(jarInfos::add);
+    }
+  }
+
+  private void addEntriesInParallel(List<URL> urls, int threads) {
+    AtomicInteger threadCount = new AtomicInteger();
+    ExecutorService executor =
+        Executors.newFixedThreadPool(
+            threads,
+            r -> {
+              Thread t = new Thread(r, "insights-jar-scanner-" + threadCount.incrementAndGet());
+              t.setDaemon(true);
+              return t;
+            });
+    try {
+      List<Future<Optional<JarInfo>>> results = new ArrayList<>(urls.size());
+      for (URL url : urls) {
+        results.add(executor.submit(() -> process(url)));
+      }
+      for (Future<Optional<JarInfo>> result : results) {
+        result.get().ifPresent(jarInfos::add);
+      }
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof InsightsException) {
+        throw (InsightsException) e.getCause();
+      }
+      throw new InsightsException(ERROR_GENERATING_ARCHIVE_HASH, "JAR hashing error", e.getCause());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InsightsException(ERROR_GENERATING_ARCHIVE_HASH, "JAR hashing interrupted", e);
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private Optional<JarInfo> process(URL url) {
+    try {
+      return analyzer.process(url);
+    } catch (URISyntaxException e) {
+      throw new InsightsException(ERROR_GENERATING_ARCHIVE_HASH, "JAR hashing error", e);
+    }
+  }
+}
@@ -1,11 +1,13 @@
-/* Copyright (C) Red Hat 2023-2025 */
+/* Copyright (C) Red Hat 2023-2026 */
 package com.redhat.insights.agent;
 
 import com.redhat.insights.config.EnvAndSysPropsInsightsConfiguration;
 import java.io.IOException;
 import java.nio.charset.Charset;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.Duration;
 import java.util.Map;
 import java.util.Optional;
 
@@ -26,12 +28,37 @@ public final class AgentConfiguration extends EnvAndSysPropsInsightsConfiguratio
   static final String AGENT_ARG_SHOULD_DEFER = "should_defer";
   static final String AGENT_ARG_POD_NAME = "pod_name";
   static final String AGENT_ARG_POD_NAMESPACE = "pod_namespace";
+  static final String AGENT_ARG_ASYNC_JAR_ANALYSIS = "async_jar_analysis";
+  static final String AGENT_ARG_ADAPTIVE_NOTICER = "adaptive_noticer";
+  static final String AGENT_ARG_NOTICER_QUIET_SECS = "noticer_quiet_secs";
+  static final String AGENT_ARG_NOTICER_QUIET_THRESHOLD = "noticer_quiet_threshold";
+  static final String AGENT_ARG_NOTICER_SWEEP_SECS = "noticer_sweep_secs";
+  static final String AGENT_ARG_JAR_CACHE_DIR = "jar_cache_dir";
+  static final String AGENT_ARG_PARALLELISM = "parallelism";
+  static final String AGENT_ARG_JAR_QUEUE_CAPACITY = "jar_queue_capacity";
+  static final String AGENT_ARG_JAR_BATCH_SIZE = "jar_batch_size";
+  static final String AGENT_ARG_JAR_BATCH_LINGER_SECS = "jar_batch_linger_secs";
+  static final String AGENT_ARG_REPORT_METRICS = "report_metrics";
+  static final String AGENT_ARG_LAZY_START = "lazy_start";
+  static final String AGENT_ARG_LAZY_START_DELAY_SECS = "lazy_start_delay_secs";
+  static final String AGENT_ARG_DELTA_REPORTS = "delta_reports";
+  static final String AGENT_ARG_COMPACT_JARS = "compact_jars";
+  static final String AGENT_ARG_STREAM_UPLOAD = "stream_upload";
 
   static final String ENV_POD_NAME = "RHT_INSIGHTS_JAVA_AGENT_POD_NAME";
   static final String ENV_POD_NAMESPACE = "RHT_INSIGHTS_JAVA_AGENT_POD_NAMESPACE";
   static final String ENV_DEBUG = "RHT_INSIGHTS_JAVA_AGENT_DEBUG";
 
   static final String PROPERTY_NOT_GIVEN_DEFAULT = "[NONE]";
+  static final long DEFAULT_NOTICER_QUIET_SECS = 300L;
+  static final long DEFAULT_NOTICER_QUIET_THRESHOLD = 0L;
+  static final long DEFAULT_NOTICER_SWEEP_SECS = 300L;
+  static final long DEFAULT_PARALLELISM = 1L;
+  static final long DEFAULT_JAR_QUEUE_CAPACITY = 1024L;
+  static final long DEFAULT_JAR_BATCH_SIZE = 0L;
+  static final long DEFAULT_JAR_BATCH_LINGER_SECS = 0L;
+  static final Duration JAR_BATCH_CHECK_INTERVAL = Duration.ofSeconds(10);
+  static final long DEFAULT_LAZY_START_DELAY_SECS = 30L;
   private final Map<String, String> args;
 
   private static final AgentLogger logger = AgentLogger.getLogger();
@@ -146,6 +173,121 @@ public final class AgentConfiguration extends EnvAndSysPropsInsightsConfiguratio
     return TRUE.equalsIgnoreCase(args.getOrDefault(AGENT_ARG_SHOULD_DEFER, FALSE));
   }
 
+  public boolean isAsyncJarAnalysis() {
+    return TRUE.equalsIgnoreCase(args.getOrDefault(AGENT_ARG_ASYNC_JAR_ANALYSIS, FALSE));
+  }
+
+  public boolean isAdaptiveNoticer() {
+    return TRUE.equalsIgnoreCase(args.getOrDefault(AGENT_ARG_ADAPTIVE_NOTICER, FALSE));
+  }
+
+  public Duration getNoticerQuietWindow() {
+    return Duration.ofSeconds(getLong(AGENT_ARG_NOTICER_QUIET_SECS, DEFAULT_NOTICER_QUIET_SECS));
+  }
+
+  public long getNoticerQuietThreshold() {
+    return getLong(AGENT_ARG_NOTICER_QUIET_THRESHOLD, DEFAULT_NOTICER_QUIET_THRESHOLD);
+  }
+
+  public Duration getNoticerSweepInterval() {
+    return Duration.ofSeconds(getLong(AGENT_ARG_NOTICER_SWEEP_SECS, DEFAULT_NOTICER_SWEEP_SECS));
+  }
+
+  public Optional<Path> getJarCacheDir() {
+    String value = args.get(AGENT_ARG_JAR_CACHE_DIR);
+    if (value == null || value.isEmpty()) {
+      return Optional.empty();
+    }
+    return Optional.of(Paths.get(value));
+  }
+
+  /**
+   * @return the number of threads to analyze classpath jars with, never more than the processors
+   *     available to this JVM. A value of 0 means use all of them.
+   */
+  public int getParallelism() {
+    int available = Runtime.getRuntime().availableProcessors();
+    long requested = getLong(AGENT_ARG_PARALLELISM, DEFAULT_PARALLELISM);
+    if (requested == 0 || requested > available) {
+      return available;
+    }
+    return (int) requested;
+  }
+
+  public int getJarQueueCapacity() {
+    long capacity = getLong(AGENT_ARG_JAR_QUEUE_CAPACITY, DEFAULT_JAR_QUEUE_CAPACITY);
+    if (capacity < 1 || capacity > Integer.MAX_VALUE) {
+      logger.warning(
+          "Ignoring invalid value for "
+              + AGENT_ARG_JAR_QUEUE_CAPACITY
+              + ": "
+              + capacity
+              + ", using "
+              + DEFAULT_JAR_QUEUE_CAPACITY);
+      return (int) DEFAULT_JAR_QUEUE_CAPACITY;
+    }
+    return (int) capacity;
+  }
+
+  /** @return the most jars to send in one update; 0 means no limit */
+  public int getJarBatchSize() {
+    long size = getLong(AGENT_ARG_JAR_BATCH_SIZE, DEFAULT_JAR_BATCH_SIZE);
+    return size == 0 || size > Integer.MAX_VALUE ? Integer.MAX_VALUE : (int) size;
+  }
+
+  /**
+   * @return how long a batch smaller than the maximum waits for more jars; if not set, the usual
+   *     update period, so that only full batches are sent any sooner than without batching
+   */
+  public Duration getJarBatchLinger() {
+    long secs = getLong(AGENT_ARG_JAR_BATCH_LINGER_SECS, DEFAULT_JAR_BATCH_LINGER_SECS);
+    return secs == 0 ? super.getUpdatePeriod() : Duration.ofSeconds(secs);
+  }
+
+  /** @return true if jar updates are sent in batches, see {@link JarBatcher} */
+  public boolean isJarBatching() {
+    return getJarBatchSize() != Integer.MAX_VALUE
+        || getLong(AGENT_ARG_JAR_BATCH_LINGER_SECS, DEFAULT_JAR_BATCH_LINGER_SECS) != 0;
+  }
+
+  /**
+   * With batching on, the {@link JarBatcher} decides when jars are sent, so the controller checks
+   * its queue at the batcher's interval rather than waiting the full update period.
+   */
+  @Override
+  public Duration getUpdatePeriod() {
+    Duration period = super.getUpdatePeriod();
+    if (isJarBatching() && JAR_BATCH_CHECK_INTERVAL.compareTo(period) < 0) {
+      return JAR_BATCH_CHECK_INTERVAL;
+    }
+    return period;
+  }
+
+  public boolean isLazyStart() {
+    return TRUE.equalsIgnoreCase(args.getOrDefault(AGENT_ARG_LAZY_START, FALSE));
+  }
+
+  public Duration getLazyStartDelay() {
+    return Duration.ofSeconds(
+        getLong(AGENT_ARG_LAZY_START_DELAY_SECS, DEFAULT_LAZY_START_DELAY_SECS));
+  }
+
+  public boolean isDeltaReports() {
+    return TRUE.equalsIgnoreCase(args.getOrDefault(AGENT_ARG_DELTA_REPORTS, FALSE));
+  }
+
+  public boolean isCompactJars() {
+    return TRUE.equalsIgnoreCase(args.getOrDefault(AGENT_ARG_COMPACT_JARS, FALSE));
+  }
+
+  public boolean isStreamUpload() {
+    return TRUE.equalsIgnoreCase(args.getOrDefault(AGENT_ARG_STREAM_UPLOAD, FALSE));
+  }
+
+  public boolean isReportMetrics() {
+    return TRUE.equalsIgnoreCase(args.getOrDefault(AGENT_ARG_REPORT_METRICS, FALSE));
+  }
+
   @Override
   public String toString() {
     return "AgentConfiguration{" + "args=" + args + '}';
@@ -172,6 +314,23 @@ public final class AgentConfiguration extends EnvAndSysPropsInsightsConfiguratio
     return args.getOrDefault(AGENT_ARG_POD_NAME, PROPERTY_NOT_GIVEN_DEFAULT);
   }
 
+  private long getLong(String name, long defaultValue) {
+    String value = args.get(name);
+    if (value == null) {
+      return defaultValue;
+    }
+    try {
+      long parsed = Long.parseLong(value);
+      if (parsed >= 0) {
+        return parsed;
+      }
+    } catch (NumberFormatException e) {
+      // Fall through to the default
+    }
+    logger.warning("Ignoring invalid value for " + name + ": " + value + ", using " + defaultValue);
+    return defaultValue;
+  }
+
   private String lookup(String env) {
     String value = System.getenv(env);
     if (value == null) {
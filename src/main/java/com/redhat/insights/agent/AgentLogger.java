@@ -1,7 +1,8 @@
-/* Copyright (C) Red Hat 2023-2024 */
+/* Copyright (C) Red Hat 2023-2026 */
 package com.redhat.insights.agent;
 
 import com.redhat.insights.logging.InsightsLogger;
+import java.util.function.Supplier;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.slf4j.simple.SimpleLogger;
@@ -38,6 +39,22 @@ public class AgentLogger implements InsightsLogger {
     delegate.debug(message, err);
   }
 
+  public boolean isDebugEnabled() {
+    return delegate.isDebugEnabled();
+  }
+
+  /**
+   * Logs at debug level, only building the message if debug logging is enabled. Use this for
+   * messages that are expensive to build, such as dumps of reports or response bodies.
+   *
+   * @param message supplies the message to log
+   */
+  public void debug(Supplier<String> message) {
+    if (delegate.isDebugEnabled()) {
+      delegate.debug(message.get());
+    }
+  }
+
   @Override
   public void error(String message) {
     delegate.error(message);
@@ -1,4 +1,4 @@
-/* Copyright (C) Red Hat 2023-2025 */
+/* Copyright (C) Red Hat 2023-2026 */
 package com.redhat.insights.agent;
 
 import com.redhat.insights.InsightsException;
@@ -8,11 +8,13 @@ import com.redhat.insights.http.InsightsHttpClient;
 import com.redhat.insights.jars.JarInfo;
 import com.redhat.insights.reports.InsightsReport;
 import java.lang.instrument.Instrumentation;
+import java.nio.file.Path;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Supplier;
 
 /** Main class for the agent. */
@@ -21,12 +23,18 @@ public final class AgentMain {
 
   private final AgentConfiguration configuration;
   private final BlockingQueue<JarInfo> waitingJars;
+  private final CachingJarAnalyzer analyzer;
 
   private static boolean loaded = false;
+  private static final CountDownLatch ready = new CountDownLatch(1);
 
-  private AgentMain(AgentConfiguration configuration, BlockingQueue<JarInfo> jarsToSend) {
+  private AgentMain(
+      AgentConfiguration configuration,
+      BlockingQueue<JarInfo> jarsToSend,
+      CachingJarAnalyzer analyzer) {
     this.configuration = configuration;
     this.waitingJars = jarsToSend;
+    this.analyzer = analyzer;
   }
 
   public static void premain(String agentArgs, Instrumentation instrumentation) {
@@ -57,28 +65,155 @@ public final class AgentMain {
       return;
     }
     AgentConfiguration config = oArgs.get();
+    if (config.isLazyStart()) {
+      startLazily(config, instrumentation);
+      return;
+    }
 
     if (!shouldContinue(config)) {
       logger.info(
           "Config indicates Red Hat Insights agent is not to be run. Not starting agent capability.");
       return;
     }
-    if (config.isDebug()) {
-      logger.setDebugDelegate();
-      logger.debug("Running in debug mode");
-    }
+    enableDebug(config);
 
-    final BlockingQueue<JarInfo> jarsToSend = new LinkedBlockingQueue<>();
+    final BoundedJarQueue jarsToSend = createJarQueue(config);
     try {
       logger.info("Starting Red Hat Insights agent");
-      new AgentMain(config, jarsToSend).start();
-      ClassNoticer noticer = new ClassNoticer(jarsToSend);
+      final CachingJarAnalyzer analyzer = createJarAnalyzer(config);
+      watchClassArrivals();
+      registerMetrics(jarsToSend);
+      new AgentMain(config, batchJars(config, jarsToSend), analyzer).start();
+      ClassNoticer noticer = new ClassNoticer(jarsToSend, config.isAsyncJarAnalysis(), analyzer);
       instrumentation.addTransformer(noticer);
+      superviseNoticer(config, instrumentation, jarsToSend, noticer);
     } catch (Throwable t) {
       logger.error("Unable to start Red Hat Insights client", t);
     }
   }
 
+  /**
+   * Tells an agent started with {@code lazy_start} that the application has finished starting, so
+   * the rest of the agent can start now rather than when the delay runs out. Has no effect
+   * otherwise.
+   */
+  public static void signalReady() {
+    ready.countDown();
+  }
+
+  /*
+   * Lazy start does only what is needed not to miss any jars in premain: a noticer that records new
+   * code sources without analyzing them. Everything else, including deciding whether to run at all,
+   * happens on a background thread once the delay is up or the application signals it is ready.
+   */
+  private static void startLazily(AgentConfiguration config, Instrumentation instrumentation) {
+    long start = System.nanoTime();
+    try {
+      final BoundedJarQueue jarsToSend = createJarQueue(config);
+      ClassNoticer noticer = new ClassNoticer(jarsToSend, config.isAsyncJarAnalysis(), null);
+      // Looking for fingerprints on the classpath waits for the starter thread
+      JBossFingerprint.getInstance().watch(ClassArrivalWatcher.getInstance());
+      WorkloadFingerprints.watchBuiltInProbes(ClassArrivalWatcher.getInstance());
+      instrumentation.addTransformer(noticer);
+      Thread starter =
+          new Thread(
+              () -> finishLazyStart(config, instrumentation, jarsToSend, noticer, start),
+              "insights-agent-starter");
+      starter.setDaemon(true);
+      starter.start();
+    } catch (Throwable t) {
+      logger.error("Unable to start Red Hat Insights client", t);
+    }
+  }
+
+  private static void finishLazyStart(
+      AgentConfiguration config,
+      Instrumentation instrumentation,
+      BoundedJarQueue jarsToSend,
+      ClassNoticer noticer,
+      long premainStart) {
+    try {
+      if (!ready.await(config.getLazyStartDelay().toMillis(), TimeUnit.MILLISECONDS)) {
+        logger.debug("No ready signal from the application, starting after the delay");
+      }
+      if (!shouldContinue(config)) {
+        instrumentation.removeTransformer(noticer);
+        logger.info(
+            "Config indicates Red Hat Insights agent is not to be run. Not starting agent capability.");
+        return;
+      }
+      enableDebug(config);
+      WorkloadFingerprints.getInstance().watchProbes();
+      logger.info(
+          "Starting Red Hat Insights agent, "
+              + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - premainStart)
+              + "ms after it was loaded");
+      final CachingJarAnalyzer analyzer = createJarAnalyzer(config);
+      registerMetrics(jarsToSend);
+      noticer.startAnalysis(analyzer);
+      new AgentMain(config, batchJars(config, jarsToSend), analyzer).start();
+      superviseNoticer(config, instrumentation, jarsToSend, noticer);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      instrumentation.removeTransformer(noticer);
+    } catch (Throwable t) {
+      logger.error("Unable to start Red Hat Insights client", t);
+    }
+  }
+
+  private static void enableDebug(AgentConfiguration config) {
+    if (config.isDebug()) {
+      logger.setDebugDelegate();
+      logger.debug("Running in debug mode");
+    }
+  }
+
+  private static BoundedJarQueue createJarQueue(AgentConfiguration config) {
+    return new BoundedJarQueue(
+        config.getJarQueueCapacity(), config.getJarBatchSize(), config.getJarBatchLinger());
+  }
+
+  // The queue the report controller sends jars from: with batching on, the batcher's outbox
+  private static BlockingQueue<JarInfo> batchJars(
+      AgentConfiguration config, BoundedJarQueue jarsToSend) {
+    if (!config.isJarBatching()) {
+      return jarsToSend;
+    }
+    JarBatcher batcher = new JarBatcher(jarsToSend, AgentConfiguration.JAR_BATCH_CHECK_INTERVAL);
+    batcher.start();
+    return batcher.getOutbox();
+  }
+
+  // Cheap, so done up front: the watched classes may be loaded before the agent fully starts
+  private static void watchClassArrivals() {
+    JBossFingerprint.getInstance().watch(ClassArrivalWatcher.getInstance());
+    WorkloadFingerprints.getInstance().watchProbes();
+  }
+
+  private static void registerMetrics(BoundedJarQueue jarsToSend) {
+    AgentMetrics metrics = AgentMetrics.getInstance();
+    metrics.setJarQueue(jarsToSend);
+    metrics.register();
+  }
+
+  /* Wires up recovery from jar queue overflows and, if configured, the adaptive monitor. */
+  private static void superviseNoticer(
+      AgentConfiguration config,
+      Instrumentation instrumentation,
+      BoundedJarQueue jarsToSend,
+      ClassNoticer noticer) {
+    jarsToSend.setRescan(() -> noticer.rescan(instrumentation.getAllLoadedClasses()));
+    if (config.isAdaptiveNoticer()) {
+      new ClassNoticerMonitor(
+              instrumentation,
+              noticer,
+              config.getNoticerQuietWindow(),
+              config.getNoticerQuietThreshold(),
+              config.getNoticerSweepInterval())
+          .start();
+    }
+  }
+
   // Now we have the config, we need to check for the existence of the unshaded client, not just
   // the agent. This is belt-and-braces in case this agent is ever loaded into an
   // app that has built-in Insights support.
@@ -91,13 +226,12 @@ public final class AgentMain {
       return false;
     }
 
-    try {
-      // This obfuscation is necessary to work around the shader plugin which will try to helpfully
-      // rename the class name when we don't want it to.
-      String obfuscatedStem = "com.redhat";
-      String obfuscatedSubPackageAndClass = ".insights.InsightsReportController";
+    // This obfuscation is necessary to work around the shader plugin which will try to helpfully
+    // rename the class name when we don't want it to.
+    String obfuscatedStem = "com.redhat";
+    String obfuscatedSubPackageAndClass = ".insights.InsightsReportController";
 
-      Class.forName(obfuscatedStem + obfuscatedSubPackageAndClass);
+    if (ClassPresence.getInstance().isPresent(obfuscatedStem + obfuscatedSubPackageAndClass)) {
       if (config.isOCP()) {
         if (config.shouldDefer()) {
           logger.warning("Insights builtin support is available, deferring to that");
@@ -112,9 +246,8 @@ public final class AgentMain {
         logger.warning("Insights builtin support is available, deferring to that");
         return false;
       }
-    } catch (ClassNotFoundException __) {
-      // Builtin support not found, continue
     }
+    // Otherwise builtin support not found, continue
     return true;
   }
 
@@ -145,15 +278,32 @@ public final class AgentMain {
           "Unable to start Red Hat Insights agent: App requires a name for identification");
       return Optional.empty();
     }
-    logger.debug(config.toString());
+    logger.debug(config::toString);
 
     return Optional.of(config);
   }
 
+  /*
+   * If a fingerprint cache directory is configured, jars that haven't changed since a previous run
+   * are not re-hashed. Anything newly analyzed is written back when the JVM exits.
+   */
+  private static CachingJarAnalyzer createJarAnalyzer(AgentConfiguration config) {
+    Optional<Path> oCacheDir = config.getJarCacheDir();
+    if (!oCacheDir.isPresent()) {
+      return new CachingJarAnalyzer();
+    }
+    CachingJarAnalyzer analyzer = new CachingJarAnalyzer(JarFingerprintCache.load(oCacheDir.get()));
+    Runtime.getRuntime()
+        .addShutdownHook(new Thread(analyzer::saveCache, "insights-jar-cache-writer"));
+    return analyzer;
+  }
+
   private void start() {
-    final InsightsReport report = AgentBasicReport.of(configuration);
+    // Only uploads over HTTP learn which jars were accepted, so only they produce delta reports
+    final AcceptedJars acceptedJars = new AcceptedJars();
+    final InsightsReport report = AgentBasicReport.of(configuration, analyzer, acceptedJars);
 
-    final Supplier<InsightsHttpClient> clientSupplier = getInsightsClientSupplier();
+    final Supplier<InsightsHttpClient> clientSupplier = getInsightsClientSupplier(acceptedJars);
     try {
       final InsightsReportController controller =
           InsightsReportController.of(logger, configuration, report, clientSupplier, waitingJars);
@@ -168,9 +318,12 @@ public final class AgentMain {
    * need an HTTP client that can talk through the proxy to the Insights service. If we're not, we
    * are running on RHEL and need to put a report somewhere the RHEL Insights client can pick it up.
    */
-  private Supplier<InsightsHttpClient> getInsightsClientSupplier() {
+  private Supplier<InsightsHttpClient> getInsightsClientSupplier(AcceptedJars acceptedJars) {
     if (configuration.isOCP()) {
-      return () -> new InsightsAgentHttpClient(configuration);
+      // One client for the life of the agent, so its connection pool and TLS sessions are reused
+      final InsightsAgentHttpClient httpClient =
+          new InsightsAgentHttpClient(configuration, acceptedJars);
+      return () -> httpClient;
     } else {
       return () -> new InsightsFileWritingClient(logger, configuration);
     }
@@ -0,0 +1,363 @@
+/* Copyright (C) Red Hat 2026 */
+package com.redhat.insights.agent;
+
+import com.redhat.insights.logging.InsightsLogger;
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+/**
+ * Counters for the agent's own overhead: time spent in the class-loading hook, jar hashing, the jar
+ * queue, report serialization and uploads. Recording never allocates or locks, so it is safe on the
+ * class-loading path. The metrics are published over JMX and can optionally be included in the
+ * agent subreport.
+ */
+final class AgentMetrics implements AgentMetricsMBean {
+  private static final InsightsLogger logger = AgentLogger.getLogger();
+
+  static final String OBJECT_NAME = "com.redhat.insights.agent:type=AgentMetrics";
+
+  private static final AgentMetrics INSTANCE = new AgentMetrics();
+
+  // HTTP status codes are all three digits, so index them directly
+  private static final int MAX_STATUS = 600;
+
+  private final Histogram transformNanos = new Histogram();
+  private final LongAdder codeSourcesSeen = new LongAdder();
+  private final LongAdder jarsAnalyzed = new LongAdder();
+  private final LongAdder jarCacheHits = new LongAdder();
+  private final LongAdder bytesHashed = new LongAdder();
+  private final Histogram serializationNanos = new Histogram();
+  private final LongAdder payloadTotalBytes = new LongAdder();
+  private final AtomicLong lastPayloadBytes = new AtomicLong();
+  private final Histogram httpNanos = new Histogram();
+  private final LongAdder httpFailures = new LongAdder();
+  private final AtomicLongArray httpStatusCounts = new AtomicLongArray(MAX_STATUS);
+
+  private volatile BoundedJarQueue jarQueue;
+
+  AgentMetrics() {}
+
+  static AgentMetrics getInstance() {
+    return INSTANCE;
+  }
+
+  /** Publishes these metrics on the platform MBean server, if it isn't already there. */
+  void register() {
+    try {
+      MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+      ObjectName name = new ObjectName(OBJECT_NAME);
+      if (!server.isRegistered(name)) {
+        server.registerMBean(new StandardMBean(this, AgentMetricsMBean.class), name);
+      }
+    } catch (JMException | RuntimeException e) {
+      logger.warning("Unable to register agent metrics MBean", e);
+    }
+  }
+
+  /** @param jarQueue the queue of jars waiting to be sent, whose depth is reported */
+  void setJarQueue(BoundedJarQueue jarQueue) {
+    this.jarQueue = jarQueue;
+  }
+
+  void recordTransform(long nanos) {
+    transformNanos.record(nanos);
+  }
+
+  void recordCodeSourceSeen() {
+    codeSourcesSeen.increment();
+  }
+
+  /** @param bytes the size of the jar that was hashed, or a negative number if not known */
+  void recordJarAnalyzed(long bytes) {
+    jarsAnalyzed.increment();
+    if (bytes > 0) {
+      bytesHashed.add(bytes);
+    }
+  }
+
+  void recordJarCacheHit() {
+    jarCacheHits.increment();
+  }
+
+  /**
+   * @param nanos how long it took to serialize and compress the report. As the report is streamed
+   *     into the upload, this includes any time spent waiting on the connection
+   * @param compressedBytes the size of the compressed payload
+   */
+  void recordSerialization(long nanos, long compressedBytes) {
+    serializationNanos.record(nanos);
+    payloadTotalBytes.add(compressedBytes);
+    lastPayloadBytes.set(compressedBytes);
+  }
+
+  /**
+   * @param nanos how long the upload took, including reading the response
+   * @param status the HTTP status code received
+   */
+  void recordHttpSend(long nanos, int status) {
+    httpNanos.record(nanos);
+    if (status >= 0 && status < MAX_STATUS) {
+      httpStatusCounts.incrementAndGet(status);
+    }
+  }
+
+  /** @param nanos how long the upload took before it failed without a response */
+  void recordHttpFailure(long nanos) {
+    httpNanos.record(nanos);
+    httpFailures.increment();
+  }
+
+  @Override
+  public long getTransformCount() {
+    return transformNanos.getCount();
+  }
+
+  @Override
+  public long getTransformTotalNanos() {
+    return transformNanos.getTotal();
+  }
+
+  @Override
+  public long getTransformMaxNanos() {
+    return transformNanos.getMax();
+  }
+
+  @Override
+  public long getTransformP99Nanos() {
+    return transformNanos.getPercentile(0.99);
+  }
+
+  @Override
+  public long getCodeSourcesSeen() {
+    return codeSourcesSeen.sum();
+  }
+
+  @Override
+  public long getJarsAnalyzed() {
+    return jarsAnalyzed.sum();
+  }
+
+  @Override
+  public long getJarCacheHits() {
+    return jarCacheHits.sum();
+  }
+
+  @Override
+  public long getBytesHashed() {
+    return bytesHashed.sum();
+  }
+
+  @Override
+  public int getQueueDepth() {
+    BoundedJarQueue queue = jarQueue;
+    return queue == null ? 0 : queue.getDepth();
+  }
+
+  @Override
+  public long getQueueOverflows() {
+    BoundedJarQueue queue = jarQueue;
+    return queue == null ? 0 : queue.getOverflowCount();
+  }
+
+  @Override
+  public long getQueueRescans() {
+    BoundedJarQueue queue = jarQueue;
+    return queue == null ? 0 : queue.getRescanCount();
+  }
+
+  @Override
+  public long getReportsSerialized() {
+    return serializationNanos.getCount();
+  }
+
+  @Override
+  public long getSerializationTotalNanos() {
+    return serializationNanos.getTotal();
+  }
+
+  @Override
+  public long getSerializationMaxNanos() {
+    return serializationNanos.getMax();
+  }
+
+  @Override
+  public long getPayloadTotalBytes() {
+    return payloadTotalBytes.sum();
+  }
+
+  @Override
+  public long getLastPayloadBytes() {
+    return lastPayloadBytes.get();
+  }
+
+  @Override
+  public long getHttpSends() {
+    return httpNanos.getCount();
+  }
+
+  @Override
+  public long getHttpFailures() {
+    return httpFailures.sum();
+  }
+
+  @Override
+  public long getHttpTotalNanos() {
+    return httpNanos.getTotal();
+  }
+
+  @Override
+  public long getHttpMaxNanos() {
+    return httpNanos.getMax();
+  }
+
+  @Override
+  public long getHttpP99Nanos() {
+    return httpNanos.getPercentile(0.99);
+  }
+
+  @Override
+  public String getHttpStatusCounts() {
+    return getHttpStatusCountMap().toString();
+  }
+
+  /** @return the current values, under the names and in the order they are reported in */
+  Snapshot snapshot() {
+    Map<String, Long> values = new LinkedHashMap<>();
+    values.put("transform_count", getTransformCount());
+    values.put("transform_total_nanos", getTransformTotalNanos());
+    values.put("transform_max_nanos", getTransformMaxNanos());
+    values.put("transform_p99_nanos", getTransformP99Nanos());
+    values.put("code_sources_seen", getCodeSourcesSeen());
+    values.put("jars_analyzed", getJarsAnalyzed());
+    values.put("jar_cache_hits", getJarCacheHits());
+    values.put("bytes_hashed", getBytesHashed());
+    values.put("queue_depth", (long) getQueueDepth());
+    values.put("queue_overflows", getQueueOverflows());
+    values.put("queue_rescans", getQueueRescans());
+    values.put("reports_serialized", getReportsSerialized());
+    values.put("serialization_total_nanos", getSerializationTotalNanos());
+    values.put("serialization_max_nanos", getSerializationMaxNanos());
+    values.put("payload_total_bytes", getPayloadTotalBytes());
+    values.put("last_payload_bytes", getLastPayloadBytes());
+    values.put("http_sends", getHttpSends());
+    values.put("http_failures", getHttpFailures());
+    values.put("http_total_nanos", getHttpTotalNanos());
+    values.put("http_max_nanos", getHttpMaxNanos());
+    values.put("http_p99_nanos", getHttpP99Nanos());
+    return new Snapshot(values, getHttpStatusCountMap());
+  }
+
+  Map<Integer, Long> getHttpStatusCountMap() {
+    Map<Integer, Long> counts = new TreeMap<>();
+    for (int status = 0; status < MAX_STATUS; status++) {
+      long count = httpStatusCounts.get(status);
+      if (count > 0) {
+        counts.put(status, count);
+      }
+    }
+    return counts;
+  }
+
+  /**
+   * The metrics at one moment. A report holds one of these rather than reading the live counters,
+   * so it serializes the same however many times it is written.
+   */
+  static final class Snapshot {
+    private final Map<String, Long> values;
+    private final Map<Integer, Long> httpStatusCounts;
+
+    Snapshot(Map<String, Long> values, Map<Integer, Long> httpStatusCounts) {
+      this.values = Collections.unmodifiableMap(values);
+      this.httpStatusCounts = Collections.unmodifiableMap(httpStatusCounts);
+    }
+
+    /** @return each metric by its reported name, in the order they are reported in */
+    Map<String, Long> getValues() {
+      return values;
+    }
+
+    Map<Integer, Long> getHttpStatusCounts() {
+      return httpStatusCounts;
+    }
+  }
+
+  /**
+   * A histogram of durations in power-of-two buckets. Bucket {@code i} holds values below {@code
+   * 2^i}, which is plenty of resolution to tell a microsecond from a millisecond.
+   *
+   * <p>Almost every value recorded from the class-loading hook lands in the same bucket, so each
+   * bucket is a {@link LongAdder}: threads recording at once then update separate cells instead of
+   * contending on one shared counter. The maximum is only written when a new maximum is seen.
+   */
+  static final class Histogram {
+    private static final int BUCKETS = 64;
+
+    private final LongAdder[] buckets = new LongAdder[BUCKETS];
+    private final LongAdder total = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    Histogram() {
+      for (int i = 0; i < BUCKETS; i++) {
+        buckets[i] = new LongAdder();
+      }
+    }
+
+    void record(long value) {
+      if (value < 0) {
+        value = 0;
+      }
+      buckets[Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(value))].increment();
+      total.add(value);
+      long current = max.get();
+      while (value > current && !max.compareAndSet(current, value)) {
+        current = max.get();
+      }
+    }
+
+    long getCount() {
+      long count = 0;
+      for (LongAdder bucket : buckets) {
+        count += bucket.sum();
+      }
+      return count;
+    }
+
+    long getTotal() {
+      return total.sum();
+    }
+
+    long getMax() {
+      return max.get();
+    }
+
+    /**
+     * @param fraction the percentile wanted, between 0 and 1
+     * @return the upper bound of the bucket holding that percentile, capped at the maximum seen
+     */
+    long getPercentile(double fraction) {
+      long count = getCount();
+      if (count == 0) {
+        return 0;
+      }
+      long rank = (long) Math.ceil(fraction * count);
+      long seen = 0;
+      for (int i = 0; i < BUCKETS; i++) {
+        seen += buckets[i].sum();
+        if (seen >= Math.max(rank, 1)) {
+          return Math.min((1L << i) - 1, getMax());
+        }
+      }
+      return getMax();
+    }
+  }
+}
@@ -0,0 +1,54 @@
+/* Copyright (C) Red Hat 2026 */
+package com.redhat.insights.agent;
+
+/**
+ * Management interface for {@link AgentMetrics}, so the agent's own overhead can be watched over
+ * JMX. Times are in nanoseconds and sizes in bytes, all cumulative since the agent started unless
+ * named otherwise. Percentiles are approximate: they are the upper bound of a power-of-two bucket.
+ */
+public interface AgentMetricsMBean {
+  long getTransformCount();
+
+  long getTransformTotalNanos();
+
+  long getTransformMaxNanos();
+
+  long getTransformP99Nanos();
+
+  long getCodeSourcesSeen();
+
+  long getJarsAnalyzed();
+
+  long getJarCacheHits();
+
+  long getBytesHashed();
+
+  int getQueueDepth();
+
+  long getQueueOverflows();
+
+  long getQueueRescans();
+
+  long getReportsSerialized();
+
+  long getSerializationTotalNanos();
+
+  long getSerializationMaxNanos();
+
+  long getPayloadTotalBytes();
+
+  long getLastPayloadBytes();
+
+  long getHttpSends();
+
+  long getHttpFailures();
+
+  long getHttpTotalNanos();
+
+  long getHttpMaxNanos();
+
+  long getHttpP99Nanos();
+
+  /** @return counts of each HTTP status code received, e.g. {@code {202=3, 500=1}} */
+  String getHttpStatusCounts();
+}
@@ -1,88 +1,61 @@
-/* Copyright (C) Red Hat 2023-2024 */
+/* Copyright (C) Red Hat 2023-2026 */
 package com.redhat.insights.agent;
 
-import static java.lang.System.getProperty;
-
 import com.fasterxml.jackson.databind.JsonSerializer;
-import com.redhat.insights.jars.ClasspathJarInfoSubreport;
 import com.redhat.insights.jars.JarInfo;
+import com.redhat.insights.jars.JarInfoSubreport;
 import com.redhat.insights.logging.InsightsLogger;
 import com.redhat.insights.reports.InsightsSubreport;
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
-import java.security.AccessController;
-import java.security.PrivilegedAction;
 import java.util.Collection;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Properties;
-import java.util.function.Function;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 
 public class AgentSubreport implements InsightsSubreport {
-  private static final long POLL_PROPERTY_TIMEOUT_MS = 10000L;
   private static final InsightsLogger logger = AgentLogger.getLogger();
 
-  private static final Class<?>[] EMPTY_CLASS_ARRAY = new Class[0];
-  private static final Object[] EMPTY_OBJECT_ARRAY = new Object[0];
-
-  private final ClasspathJarInfoSubreport jarsReport;
+  private final JarInfoSubreport jarsReport;
   private final AgentConfiguration agentConfig;
 
-  private String guessedWorkload = "Unidentified";
-
-  private static final Map<String, Function<Class<?>, String>> activeGuesses = new HashMap<>();
-
-  static {
-    activeGuesses.put("org.springframework.boot.SpringApplication", __ -> "Spring Boot");
-    activeGuesses.put("org.springframework.boot.loader.Launcher", __ -> "Spring Boot");
-    // Since SB 3.2
-    activeGuesses.put("org.springframework.boot.loader.launch.Launcher", __ -> "Spring Boot");
-    activeGuesses.put("org.jboss.modules.Module", AgentSubreport::fingerprintJBoss);
-    activeGuesses.put(
-        "io.quarkus.bootstrap.runner.QuarkusEntryPoint", AgentSubreport::fingerprintQuarkus);
-    activeGuesses.put("org.apache.catalina.startup.Bootstrap", AgentSubreport::fingerprintTomcat);
-  }
+  private volatile String guessedWorkload = "Unidentified";
+  // Only ever wait once for the JBoss probe, however many reports are generated meanwhile
+  private final AtomicBoolean awaitingJBoss = new AtomicBoolean(false);
+  // Taken when the report is generated, so every write of it carries the same values
+  private final AtomicReference<AgentMetrics.Snapshot> metrics = new AtomicReference<>();
 
-  private AgentSubreport(ClasspathJarInfoSubreport jarsReport, AgentConfiguration agentConfig) {
+  private AgentSubreport(JarInfoSubreport jarsReport, AgentConfiguration agentConfig) {
     this.jarsReport = jarsReport;
     this.agentConfig = agentConfig;
   }
 
-  public static InsightsSubreport of(
-      ClasspathJarInfoSubreport jarsReport, AgentConfiguration agentConfig) {
+  public static InsightsSubreport of(JarInfoSubreport jarsReport, AgentConfiguration agentConfig) {
     return new AgentSubreport(jarsReport, agentConfig);
   }
 
   @Override
   public void generateReport() {
-    if (jarsReport.getJarInfos().isEmpty()) {
-      // Jar subreport has not been generated yet, generate it now
-      // This could cause unnecessary dual-generation (the correct thing is probably to fix the
-      // ClasspathJarInfoSubreport, so it checks and doesn't dual-generate)
-      jarsReport.generateReport();
+    if (agentConfig.isReportMetrics()) {
+      metrics.set(AgentMetrics.getInstance().snapshot());
     }
+    // Shared with the "jars" subreport, so this only generates once per report cycle
+    jarsReport.generateReport();
     Collection<JarInfo> jarInfos = jarsReport.getJarInfos();
     if (jarInfos.isEmpty()) {
       logger.warning("No JARs found in AgentSubreport");
     } else {
-      fingerprintReflectively(jarInfos);
+      fingerprintReflectively();
     }
   }
 
-  private void fingerprintReflectively(Collection<JarInfo> jarInfos) {
-    String workload = "";
-    for (Map.Entry<String, Function<Class<?>, String>> guess : activeGuesses.entrySet()) {
-      try {
-        Class<?> clazz = Class.forName(guess.getKey());
-        // FIXME Handle multiple matches "Possibly: X or Y"
-        workload = guess.getValue().apply(clazz);
-        break;
-      } catch (ClassNotFoundException ex) {
-        // not found - ignore
-      }
+  private void fingerprintReflectively() {
+    List<String> workloads = WorkloadFingerprints.getInstance().identifyAll();
+    if (!workloads.isEmpty()) {
+      guessedWorkload = WorkloadFingerprints.describe(workloads);
     }
-    if (!workload.isEmpty()) {
-      guessedWorkload = workload;
+    if (workloads.contains(JBossFingerprint.PENDING) && awaitingJBoss.compareAndSet(false, true)) {
+      // Fill in the real version once the background probe finds it
+      JBossFingerprint.getInstance().whenIdentified(__ -> fingerprintReflectively());
     }
   }
 
@@ -91,12 +64,10 @@ public class AgentSubreport implements InsightsSubreport {
   static String fingerprintTomcat(Class<?> __) {
     // We recommend, but don't mandate, the use of Vault in JWS so we can't use it as a definitive
     // fingerprint
-    try {
-      Class.forName("org.apache.tomcat.vault.VaultInteraction");
-    } catch (ClassNotFoundException _x) {
-      return "Tomcat";
+    if (ClassPresence.getInstance().isPresent("org.apache.tomcat.vault.VaultInteraction")) {
+      return "JWS";
     }
-    return "JWS";
+    return "Tomcat";
   }
 
   static String fingerprintQuarkus(Class<?> qClazz) {
@@ -104,100 +75,9 @@ public class AgentSubreport implements InsightsSubreport {
     return "Quarkus " + quarkusVersion;
   }
 
-  static Class<?> getModuleClass() throws ClassNotFoundException {
-    return AgentSubreport.class.getClassLoader().loadClass("org.jboss.modules.Module");
-  }
-
-  static ClassLoader getModuleClassLoader(Object moduleLoader, String moduleName)
-      throws ClassNotFoundException, NoSuchMethodException, IllegalAccessException,
-          IllegalArgumentException, InvocationTargetException {
-    Method getClassLoaderMethod =
-        getModuleClass().getDeclaredMethod("getClassLoader", EMPTY_CLASS_ARRAY);
-    return (ClassLoader)
-        getClassLoaderMethod.invoke(loadModule(moduleLoader, moduleName), EMPTY_OBJECT_ARRAY);
-  }
-
-  static Object loadModule(Object moduleLoader, String moduleName)
-      throws ClassNotFoundException, NoSuchMethodException, IllegalAccessException,
-          IllegalArgumentException, InvocationTargetException {
-    Method loadModuleMethod = moduleLoader.getClass().getMethod("loadModule", String.class);
-    return loadModuleMethod.invoke(moduleLoader, moduleName);
-  }
-
-  static String fingerprintJBoss(Class<?> moduleClass) {
-    try {
-      Method getBootModuleLoaderMethod =
-          getModuleClass().getDeclaredMethod("getBootModuleLoader", EMPTY_CLASS_ARRAY);
-      // Wait until JBoss Modules initializes to avoid breaking their module loader
-      String modulePath = pollProperty("module.path");
-      if (modulePath == null) {
-        logger.debug("Module path did not become available");
-      } else {
-        Object moduleLoader = getBootModuleLoaderMethod.invoke(null, EMPTY_OBJECT_ARRAY);
-        ClassLoader versionModuleClassLoader =
-            getModuleClassLoader(moduleLoader, "org.jboss.as.version");
-        String home = pollProperty("jboss.home.dir");
-        Class<?> moduleLoaderClass = getJBossModuleLoaderClass(moduleLoader.getClass());
-        Class<?> productConfigClass =
-            versionModuleClassLoader.loadClass("org.jboss.as.version.ProductConfig");
-        Method fromFilesystemSlotMethod =
-            productConfigClass.getDeclaredMethod(
-                "fromFilesystemSlot", moduleLoaderClass, String.class, Map.class);
-        Object productConfig =
-            fromFilesystemSlotMethod.invoke(
-                null, moduleLoaderClass.cast(moduleLoader), home, getPropertiesPrivileged());
-        return (String)
-            productConfigClass
-                .getDeclaredMethod("getPrettyVersionString", EMPTY_CLASS_ARRAY)
-                .invoke(productConfig, EMPTY_OBJECT_ARRAY);
-      }
-    } catch (Exception ex) {
-      logger.debug("Ignoring exception during JBoss probe", ex);
-    }
-    return "Unknown EAP / Wildfly - possibly misconfigured";
-  }
-
-  private static String pollProperty(String property) {
-    long timeout = System.currentTimeMillis() + POLL_PROPERTY_TIMEOUT_MS;
-    String value = getPropertyPrivileged(property, null);
-    while (value == null && System.currentTimeMillis() < timeout) {
-      try {
-        Thread.sleep(200);
-        value = getPropertyPrivileged(property, null);
-      } catch (InterruptedException ex) {
-        return value;
-      }
-    }
-    return value;
-  }
-
-  private static String getPropertyPrivileged(final String property, final String defaultValue) {
-    if (System.getSecurityManager() != null) {
-      return AccessController.doPrivileged(
-          (PrivilegedAction<String>) () -> System.getProperty(property, defaultValue));
-    }
-
-    return getProperty(property, defaultValue);
-  }
-
-  private static Properties getPropertiesPrivileged() {
-    if (System.getSecurityManager() != null) {
-      return AccessController.doPrivileged(
-          (PrivilegedAction<Properties>) () -> System.getProperties());
-    }
-
-    return System.getProperties();
-  }
-
-  static Class<?> getJBossModuleLoaderClass(Class<?> subModuleLoaderClass) {
-    if ("org.jboss.modules.ModuleLoader".equals(subModuleLoaderClass.getName())) {
-      return subModuleLoaderClass;
-    }
-    if ("java.lang.Object".equals(subModuleLoaderClass.getName())) {
-      throw new IllegalArgumentException(
-          subModuleLoaderClass + " is not a subclass of org.jboss.modules.ModuleLoader");
-    }
-    return getJBossModuleLoaderClass(subModuleLoaderClass.getSuperclass());
+  // Never blocks: until the background probe has finished, this reports a placeholder
+  static String fingerprintJBoss(Class<?> __) {
+    return JBossFingerprint.getInstance().getWorkload();
   }
 
   @Override
@@ -225,4 +105,17 @@ public class AgentSubreport implements InsightsSubreport {
   public String getPodNamespace() {
     return agentConfig.getPodNamespace();
   }
+
+  /**
+   * @return the agent's own overhead metrics as of when the report was generated, if they are to be
+   *     included in the report
+   */
+  Optional<AgentMetrics.Snapshot> getMetrics() {
+    if (!agentConfig.isReportMetrics()) {
+      return Optional.empty();
+    }
+    // Not generated yet, so take the snapshot now and keep it for later writes
+    metrics.compareAndSet(null, AgentMetrics.getInstance().snapshot());
+    return Optional.of(metrics.get());
+  }
 }
@@ -1,4 +1,4 @@
-/* Copyright (C) Red Hat 2023-2024 */
+/* Copyright (C) Red Hat 2023-2026 */
 package com.redhat.insights.agent;
 
 import com.fasterxml.jackson.core.JsonGenerator;
@@ -6,6 +6,8 @@ import com.fasterxml.jackson.databind.JsonSerializer;
 import com.fasterxml.jackson.databind.SerializerProvider;
 import com.redhat.insights.reports.InsightsSubreport;
 import java.io.IOException;
+import java.util.Map;
+import java.util.Optional;
 
 public class AgentSubreportSerializer extends JsonSerializer<InsightsSubreport> {
   @Override
@@ -21,7 +23,25 @@ public class AgentSubreportSerializer extends JsonSerializer<InsightsSubreport>
     generator.writeStringField("is_ocp", subreport.isOCP());
     generator.writeStringField("pod_name", subreport.getPodName());
     generator.writeStringField("pod_namespace", subreport.getPodNamespace());
+    Optional<AgentMetrics.Snapshot> oMetrics = subreport.getMetrics();
+    if (oMetrics.isPresent()) {
+      writeMetrics(generator, oMetrics.get());
+    }
     generator.writeEndObject();
     generator.flush();
   }
+
+  private static void writeMetrics(JsonGenerator generator, AgentMetrics.Snapshot metrics)
+      throws IOException {
+    generator.writeObjectFieldStart("metrics");
+    for (Map.Entry<String, Long> value : metrics.getValues().entrySet()) {
+      generator.writeNumberField(value.getKey(), value.getValue());
+    }
+    generator.writeObjectFieldStart("http_status_counts");
+    for (Map.Entry<Integer, Long> status : metrics.getHttpStatusCounts().entrySet()) {
+      generator.writeNumberField(String.valueOf(status.getKey()), status.getValue());
+    }
+    generator.writeEndObject();
+    generator.writeEndObject();
+  }
 }
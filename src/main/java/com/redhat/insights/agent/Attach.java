@@ -1,41 +1,380 @@
-/* Copyright (C) Red Hat 2023-2024 */
+/* Copyright (C) Red Hat 2023-2026 */
 package com.redhat.insights.agent;
 
-import com.sun.tools.attach.AgentInitializationException;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.sun.tools.attach.AgentLoadException;
-import com.sun.tools.attach.AttachNotSupportedException;
 import com.sun.tools.attach.VirtualMachine;
+import com.sun.tools.attach.VirtualMachineDescriptor;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
 import java.net.URL;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
-/** Dynamic attachment class for use on apps that are already running. */
+/**
+ * Dynamic attachment class for use on apps that are already running.
+ *
+ * <p>Usage: {@code Attach <pids> <options> [--threads=N] [--timeout-secs=N]}, where {@code <pids>}
+ * is a pid, a comma-separated list of pids, or {@code all} for every JVM this user can attach to.
+ * Targets are attached to concurrently, each with its own timeout, and a JSON summary of the
+ * outcome for each one is printed to stdout. The exit status is non-zero if any attach failed or
+ * timed out; a target that can't load the agent (usually a Java version mismatch) is reported as
+ * incompatible, but isn't treated as a failure.
+ *
+ * <p>With {@code all} and {@code --watch-secs=N}, it keeps running instead, checking every N
+ * seconds for JVMs started since and attaching to each new one once, see {@link AttachWatcher}.
+ */
 public class Attach {
   private static final int ATTACH_PARAM_SAFE_LIMIT = 250;
 
+  static final String ALL_TARGETS = "all";
+  static final String THREADS_FLAG = "--threads=";
+  static final String TIMEOUT_FLAG = "--timeout-secs=";
+  static final String WATCH_FLAG = "--watch-secs=";
+  static final int DEFAULT_THREADS = 8;
+  static final long DEFAULT_TIMEOUT_SECS = 30L;
+
+  static final String ATTACHED = "attached";
+  static final String INCOMPATIBLE = "incompatible";
+  static final String FAILED = "failed";
+  static final String TIMED_OUT = "timed_out";
+  static final String GAVE_UP = "gave_up";
+
   public static void main(String[] args) {
     if (args.length < 2) {
-      System.err.println("Need args: pid, options");
+      System.err.println(
+          "Need args: pid[,pid...]|"
+              + ALL_TARGETS
+              + ", options [--threads=N] [--timeout-secs=N] [--watch-secs=N]");
       System.exit(1);
     }
     URL jarUrl = AgentMain.class.getProtectionDomain().getCodeSource().getLocation();
-    //    System.out.println("Trying to attach: " + jarUrl);
     String agentJar = jarUrl.toExternalForm().replaceFirst("^file:", "");
 
-    String pid = args[0];
     String options = args[1];
     if (options.length() > ATTACH_PARAM_SAFE_LIMIT) {
       System.err.println(
           "WARNING: option string is long, attach may fail. Usual cause of this is a long token - consider using a token file instead");
     }
+    int threads = DEFAULT_THREADS;
+    long timeoutSecs = DEFAULT_TIMEOUT_SECS;
+    long watchSecs = 0;
+    try {
+      for (int i = 2; i < args.length; i++) {
+        if (args[i].startsWith(THREADS_FLAG)) {
+          threads = Integer.parseInt(args[i].substring(THREADS_FLAG.length()));
+        } else if (args[i].startsWith(WATCH_FLAG)) {
+          watchSecs = Long.parseLong(args[i].substring(WATCH_FLAG.length()));
+        } else if (args[i].startsWith(TIMEOUT_FLAG)) {
+          timeoutSecs = Long.parseLong(args[i].substring(TIMEOUT_FLAG.length()));
+        } else {
+          System.err.println("Unrecognized arg: " + args[i]);
+          System.exit(1);
+        }
+      }
+    } catch (NumberFormatException e) {
+      System.err.println("Invalid number: " + e.getMessage());
+      System.exit(1);
+    }
+
+    Attacher attacher =
+        pid -> {
+          VirtualMachine vm = VirtualMachine.attach(pid);
+          try {
+            vm.loadAgent(agentJar, options);
+          } finally {
+            vm.detach();
+          }
+        };
+    if (watchSecs > 0) {
+      if (!ALL_TARGETS.equalsIgnoreCase(args[0])) {
+        System.err.println(WATCH_FLAG + " can only be used with " + ALL_TARGETS);
+        System.exit(1);
+      }
+      watch(attacher, threads, timeoutSecs, watchSecs);
+      return;
+    }
+
+    List<String> pids = resolveTargets(args[0]);
+    List<Result> results = attachAll(pids, attacher, threads, timeoutSecs);
+    try {
+      writeSummary(results, System.out);
+    } catch (IOException e) {
+      System.err.println("Unable to write summary: " + e.getMessage());
+    }
+    // Exit explicitly, as a timed out attach may have left its thread stuck
+    System.exit(isSuccess(results) ? 0 : 1);
+  }
+
+  private static void watch(Attacher attacher, int threads, long timeoutSecs, long watchSecs) {
+    AttachWatcher watcher =
+        new AttachWatcher(
+            AttachWatcher.defaultPerfDataDir(),
+            Paths.get("/proc"),
+            attacher,
+            threads,
+            timeoutSecs,
+            System.out,
+            Long.parseLong(selfPid()));
+    try {
+      watcher.run(Duration.ofSeconds(watchSecs));
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private static String selfPid() {
+    return ManagementFactory.getRuntimeMXBean().getName().split("@")[0];
+  }
+
+  /**
+   * @param spec a pid, a comma-separated list of pids, or {@code all}
+   * @return the distinct pids to attach to, never including this JVM
+   */
+  static List<String> resolveTargets(String spec) {
+    Set<String> pids = new LinkedHashSet<>();
+    if (ALL_TARGETS.equalsIgnoreCase(spec)) {
+      for (VirtualMachineDescriptor descriptor : VirtualMachine.list()) {
+        pids.add(descriptor.id());
+      }
+    } else {
+      for (String pid : spec.split(",")) {
+        if (!pid.trim().isEmpty()) {
+          pids.add(pid.trim());
+        }
+      }
+    }
+    pids.remove(selfPid());
+    return new ArrayList<>(pids);
+  }
+
+  /**
+   * Attaches to each target on its own thread, at most {@code threads} at once. Each target's
+   * timeout starts when its attach does, so targets waiting their turn aren't penalized. A target
+   * that times out is abandoned, and its thread left to finish or hang, as the attach API doesn't
+   * reliably respond to interrupts.
+   *
+   * <p>All targets must finish within an overall deadline, allowing one timeout per round of
+   * {@code threads} targets and one more to spare. Any target not started or finished by then is
+   * reported as timed out.
+   *
+   * @param pids the targets
+   * @param attacher does the attach for one target
+   * @param threads the most targets to attach to at once
+   * @param timeoutSecs how long each attach may take
+   * @return the outcome for each target, in the order given
+   */
+  static List<Result> attachAll(
+      List<String> pids, Attacher attacher, int threads, long timeoutSecs) {
+    long begin = System.nanoTime();
+    int parallelism = Math.max(1, Math.min(threads, pids.size()));
+    long rounds = (pids.size() + parallelism - 1) / parallelism;
+    long deadline = begin + TimeUnit.SECONDS.toNanos((rounds + 1) * timeoutSecs);
+    Semaphore slots = new Semaphore(parallelism);
+    ScheduledExecutorService timer =
+        Executors.newSingleThreadScheduledExecutor(
+            r -> {
+              Thread t = new Thread(r, "insights-attach-timer");
+              t.setDaemon(true);
+              return t;
+            });
+    try {
+      List<CompletableFuture<Result>> futures = new ArrayList<>(pids.size());
+      for (String pid : pids) {
+        CompletableFuture<Result> future = new CompletableFuture<>();
+        futures.add(future);
+        if (slots.tryAcquire(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS)) {
+          startAttach(pid, attacher, timeoutSecs, timer, future, slots::release);
+        } else {
+          future.complete(
+              new Result(pid, TIMED_OUT, "Not started before the overall deadline", 0));
+        }
+      }
+      List<Result> results = new ArrayList<>(futures.size());
+      for (int i = 0; i < futures.size(); i++) {
+        results.add(awaitResult(pids.get(i), futures.get(i), begin, deadline));
+      }
+      return results;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted waiting for attach", e);
+    } finally {
+      timer.shutdownNow();
+    }
+  }
+
+  /**
+   * Starts the attach to one target on a new thread. The thread is never reused, so an interrupt
+   * from a timeout that races the attach finishing can't reach another target.
+   *
+   * @param onDone run once, when the attach finishes or times out
+   */
+  private static void startAttach(
+      String pid,
+      Attacher attacher,
+      long timeoutSecs,
+      ScheduledExecutorService timer,
+      CompletableFuture<Result> future,
+      Runnable onDone) {
+    long start = System.nanoTime();
+    Thread worker =
+        new Thread(
+            () -> future.complete(attachOne(pid, attacher, start)), "insights-attach-" + pid);
+    worker.setDaemon(true);
+    ScheduledFuture<?> timeout =
+        timer.schedule(
+            () -> {
+              if (future.complete(
+                  new Result(
+                      pid,
+                      TIMED_OUT,
+                      "No response after " + timeoutSecs + "s",
+                      elapsedMillis(start),
+                      worker))) {
+                worker.interrupt();
+              }
+            },
+            timeoutSecs,
+            TimeUnit.SECONDS);
+    future.whenComplete(
+        (result, e) -> {
+          timeout.cancel(false);
+          onDone.run();
+        });
+    worker.start();
+  }
+
+  private static Result awaitResult(
+      String pid, CompletableFuture<Result> future, long begin, long deadline)
+      throws InterruptedException {
+    try {
+      return future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+    } catch (TimeoutException e) {
+      future.complete(
+          new Result(
+              pid, TIMED_OUT, "No response before the overall deadline", elapsedMillis(begin)));
+      return future.join();
+    } catch (ExecutionException e) {
+      // Never completed exceptionally
+      throw new IllegalStateException(e.getCause());
+    }
+  }
 
+  private static Result attachOne(String pid, Attacher attacher, long start) {
     try {
-      VirtualMachine vm = VirtualMachine.attach(pid);
-      vm.loadAgent(agentJar, options);
-      vm.detach();
-    } catch (AgentLoadException | IOException __) {
-      // Probable Java version mismatch, ignore and exit cleanly
-    } catch (AttachNotSupportedException | AgentInitializationException e) {
-      throw new RuntimeException(e);
+      attacher.attach(pid);
+      return new Result(pid, ATTACHED, null, elapsedMillis(start));
+    } catch (AgentLoadException | IOException e) {
+      // Probable Java version mismatch
+      return new Result(pid, INCOMPATIBLE, String.valueOf(e), elapsedMillis(start));
+    } catch (Exception e) {
+      return new Result(pid, FAILED, String.valueOf(e), elapsedMillis(start));
+    }
+  }
+
+  private static long elapsedMillis(long start) {
+    return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+  }
+
+  static boolean isSuccess(List<Result> results) {
+    for (Result result : results) {
+      if (FAILED.equals(result.status)
+          || TIMED_OUT.equals(result.status)
+          || GAVE_UP.equals(result.status)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  static void writeSummary(List<Result> results, OutputStream out) throws IOException {
+    int attached = 0;
+    int incompatible = 0;
+    int failed = 0;
+    int timedOut = 0;
+    int gaveUp = 0;
+    for (Result result : results) {
+      switch (result.status) {
+        case ATTACHED:
+          attached++;
+          break;
+        case INCOMPATIBLE:
+          incompatible++;
+          break;
+        case TIMED_OUT:
+          timedOut++;
+          break;
+        case GAVE_UP:
+          gaveUp++;
+          break;
+        default:
+          failed++;
+      }
+    }
+    JsonGenerator generator = new JsonFactory().createGenerator(out, JsonEncoding.UTF8);
+    generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+    generator.writeStartObject();
+    generator.writeNumberField(ATTACHED, attached);
+    generator.writeNumberField(INCOMPATIBLE, incompatible);
+    generator.writeNumberField(FAILED, failed);
+    generator.writeNumberField(TIMED_OUT, timedOut);
+    generator.writeNumberField(GAVE_UP, gaveUp);
+    generator.writeFieldName("targets");
+    generator.writeStartArray();
+    for (Result result : results) {
+      generator.writeStartObject();
+      generator.writeStringField("pid", result.pid);
+      generator.writeStringField("status", result.status);
+      generator.writeNumberField("millis", result.millis);
+      if (result.message != null) {
+        generator.writeStringField("message", result.message);
+      }
+      generator.writeEndObject();
+    }
+    generator.writeEndArray();
+    generator.writeEndObject();
+    generator.writeRaw('\n');
+    generator.close();
+  }
+
+  /** Attaches the agent to one target. */
+  interface Attacher {
+    void attach(String pid) throws Exception;
+  }
+
+  static final class Result {
+    final String pid;
+    final String status;
+    final String message;
+    final long millis;
+    // The thread left running when a timed out attach was abandoned, otherwise null
+    final Thread abandoned;
+
+    Result(String pid, String status, String message, long millis) {
+      this(pid, status, message, millis, null);
+    }
+
+    Result(String pid, String status, String message, long millis, Thread abandoned) {
+      this.pid = pid;
+      this.status = status;
+      this.message = message;
+      this.millis = millis;
+      this.abandoned = abandoned;
     }
   }
 }
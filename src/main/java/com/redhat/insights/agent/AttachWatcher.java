@@ -0,0 +1,349 @@
+/* Copyright (C) Red Hat 2026 */
+package com.redhat.insights.agent;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Map;
+
+/**
+ * Long-running mode for {@link Attach}: watches for new JVMs and attaches the agent to each one
+ * once.
+ *
+ * <p>JVMs are found by listing this user's hsperfdata directory, which every HotSpot JVM (unless
+ * started with {@code -XX:-UsePerfData}) creates a file in, named after its pid. Only JVMs run by
+ * the same user can be attached to anyway. A scan is skipped entirely if the directory hasn't
+ * changed since the last one and no JVM is still waiting to be attached to, so most of the time a
+ * scan costs a single {@code stat}.
+ *
+ * <p>Attaching signals the target with {@code SIGQUIT}, which kills a JVM that hasn't installed its
+ * handler yet, so a new JVM is only attached to once its hsperfdata file (see {@link HsPerfData})
+ * says it has finished starting up, and {@code /proc/<pid>/status} shows it catches {@code
+ * SIGQUIT}. Where that can't be read, it is attached to once it has been up for a few seconds
+ * instead.
+ *
+ * <p>A JVM counts as handled once the agent is attached to it or it turns out to be incompatible.
+ * A failed or timed out attach is retried, after a delay that doubles each time up to a limit, but
+ * not while the thread of an earlier attach that timed out is still stuck. After {@value
+ * #MAX_ATTEMPTS} attempts, or if it still isn't ready to be attached to a minute after it was first
+ * seen, the JVM is given up on, which is reported as {@code gave_up} and counts as handled. Handled
+ * JVMs are remembered by pid and start time, so a recycled pid is seen as a new JVM, and
+ * are forgotten when they exit, so the record only ever holds the JVMs currently running.
+ */
+final class AttachWatcher {
+  private static final String PERF_DATA_PREFIX = "hsperfdata_";
+  private static final long UNKNOWN_START_TIME = -1L;
+  private static final long SETTLE_MILLIS = 2000L;
+  // USER_HZ, which is 100 on every Linux platform a JVM runs on
+  private static final long CLOCK_TICKS_PER_SECOND = 100L;
+  private static final long SIGQUIT_MASK = 1L << (3 - 1);
+  static final long MIN_UPTIME_MILLIS = 5000L;
+  static final long MIN_RETRY_MILLIS = 5000L;
+  static final long MAX_RETRY_MILLIS = 300_000L;
+  static final int MAX_ATTEMPTS = 5;
+  static final long MAX_READY_WAIT_MILLIS = 60_000L;
+
+  private final Path perfDataDir;
+  private final Path procDir;
+  private final Attach.Attacher attacher;
+  private final int threads;
+  private final long timeoutSecs;
+  private final PrintStream out;
+  private final long selfPid;
+
+  // pid -> start time of the JVM we attached to, or gave up on, with that pid
+  private final Map<Long, Long> handled = new HashMap<>();
+  // pid -> the JVM with that pid, while it is waiting to be ready or for a retry
+  private final Map<Long, Pending> pending = new HashMap<>();
+  private long lastModified = Long.MIN_VALUE;
+  // Whether the last scan left any running JVM unhandled
+  private boolean outstanding = false;
+
+  AttachWatcher(
+      Path perfDataDir,
+      Path procDir,
+      Attach.Attacher attacher,
+      int threads,
+      long timeoutSecs,
+      PrintStream out,
+      long selfPid) {
+    this.perfDataDir = perfDataDir;
+    this.procDir = procDir;
+    this.attacher = attacher;
+    this.threads = threads;
+    this.timeoutSecs = timeoutSecs;
+    this.out = out;
+    this.selfPid = selfPid;
+  }
+
+  /** @return the hsperfdata directory of the user running this JVM */
+  static Path defaultPerfDataDir() {
+    // HotSpot always uses /tmp on Linux, whatever java.io.tmpdir is set to
+    String tmpDir =
+        System.getProperty("os.name", "").startsWith("Linux")
+            ? "/tmp"
+            : System.getProperty("java.io.tmpdir");
+    return Paths.get(tmpDir).resolve(PERF_DATA_PREFIX + System.getProperty("user.name"));
+  }
+
+  /**
+   * Scans for new JVMs at a fixed interval, until interrupted.
+   *
+   * @param interval the time between scans
+   */
+  void run(Duration interval) throws InterruptedException {
+    while (!Thread.currentThread().isInterrupted()) {
+      scan();
+      Thread.sleep(interval.toMillis());
+    }
+  }
+
+  /**
+   * Attaches to any JVMs that are new since the last scan and ready, or due a retry, and prints a
+   * summary if there were any.
+   *
+   * @return the outcome for each JVM attached to
+   */
+  List<Attach.Result> scan() {
+    return scan(System.currentTimeMillis());
+  }
+
+  List<Attach.Result> scan(long now) {
+    long modified = directoryLastModified();
+    if (modified == lastModified && !outstanding) {
+      return new ArrayList<>();
+    }
+    // Timestamps may only have one-second resolution, so a directory modified very recently could
+    // change again without its timestamp changing. Don't rely on it until it has settled.
+    lastModified = now - modified > SETTLE_MILLIS ? modified : Long.MIN_VALUE;
+
+    Map<Long, Long> running = listRunning();
+    handled.keySet().retainAll(running.keySet());
+    // Forget JVMs that have exited, including any whose pid is now reused
+    pending.entrySet().removeIf(jvm -> !jvm.getValue().isFor(running.get(jvm.getKey())));
+    List<String> pids = new ArrayList<>();
+    List<Attach.Result> givenUp = new ArrayList<>();
+    for (Map.Entry<Long, Long> jvm : running.entrySet()) {
+      long pid = jvm.getKey();
+      Long startTime = jvm.getValue();
+      if (isHandled(pid, startTime)) {
+        continue;
+      }
+      Pending state = pending.computeIfAbsent(pid, __ -> new Pending(startTime, now));
+      if (now < state.nextAttempt) {
+        continue;
+      }
+      if (state.abandoned != null && state.abandoned.isAlive()) {
+        // Another thread would only get stuck the same way, so count it as a failed attempt
+        if (state.failed(now, state.abandoned) >= MAX_ATTEMPTS) {
+          givenUp.add(giveUp(pid, "Earlier attach still stuck after " + MAX_ATTEMPTS + " tries"));
+        }
+      } else if (isReady(pid, startTime)) {
+        pids.add(String.valueOf(pid));
+      } else if (now - state.firstSeen >= MAX_READY_WAIT_MILLIS) {
+        givenUp.add(giveUp(pid, "Never ready to attach to, it may not handle SIGQUIT"));
+      }
+    }
+
+    List<Attach.Result> results =
+        pids.isEmpty()
+            ? new ArrayList<>()
+            : Attach.attachAll(pids, attacher, threads, timeoutSecs);
+    for (ListIterator<Attach.Result> it = results.listIterator(); it.hasNext(); ) {
+      Attach.Result result = it.next();
+      Long pid = Long.valueOf(result.pid);
+      if (Attach.ATTACHED.equals(result.status) || Attach.INCOMPATIBLE.equals(result.status)) {
+        handled.put(pid, running.get(pid));
+        pending.remove(pid);
+      } else if (pending.get(pid).failed(now, result.abandoned) >= MAX_ATTEMPTS) {
+        giveUp(pid, null);
+        it.set(
+            new Attach.Result(
+                result.pid,
+                Attach.GAVE_UP,
+                result.message + ", giving up after " + MAX_ATTEMPTS + " tries",
+                result.millis,
+                result.abandoned));
+      }
+    }
+    results.addAll(givenUp);
+    outstanding = hasUnhandled(running);
+    if (results.isEmpty()) {
+      return results;
+    }
+    try {
+      Attach.writeSummary(results, out);
+    } catch (IOException e) {
+      System.err.println("Unable to write summary: " + e.getMessage());
+    }
+    return results;
+  }
+
+  /** Stops trying the JVM, and records it as handled so it isn't looked at again. */
+  private Attach.Result giveUp(long pid, String message) {
+    handled.put(pid, pending.remove(pid).startTime);
+    return new Attach.Result(String.valueOf(pid), Attach.GAVE_UP, message, 0);
+  }
+
+  int getHandledCount() {
+    return handled.size();
+  }
+
+  /** @return how long to wait before the next attach, after {@code attempts} have failed */
+  static long retryDelayMillis(int attempts) {
+    // Double from the minimum, without overflowing
+    int doublings = Math.min(attempts - 1, 30);
+    return Math.min(MAX_RETRY_MILLIS, MIN_RETRY_MILLIS << doublings);
+  }
+
+  private boolean isHandled(long pid, Long startTime) {
+    return startTime.equals(handled.get(pid));
+  }
+
+  private boolean hasUnhandled(Map<Long, Long> running) {
+    for (Map.Entry<Long, Long> jvm : running.entrySet()) {
+      if (!isHandled(jvm.getKey(), jvm.getValue())) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * @return whether the JVM has finished starting up and catches {@code SIGQUIT}, or if that can't
+   *     be told, whether it has been up long enough that it should
+   */
+  private boolean isReady(long pid, long startTime) {
+    try {
+      // A JVM marks its counters accessible once it has finished starting up
+      if (!HsPerfData.read(perfDataDir.resolve(String.valueOf(pid))).isAccessible()) {
+        return false;
+      }
+    } catch (IOException | RuntimeException __) {
+      // Go on the other signs
+    }
+    Path status = procDir.resolve(String.valueOf(pid)).resolve("status");
+    try {
+      for (String line : Files.readAllLines(status, StandardCharsets.ISO_8859_1)) {
+        if (line.startsWith("SigCgt:")) {
+          long caught = Long.parseUnsignedLong(line.substring("SigCgt:".length()).trim(), 16);
+          return (caught & SIGQUIT_MASK) != 0;
+        }
+      }
+    } catch (IOException | RuntimeException __) {
+      // Fall back to the uptime
+    }
+    if (startTime == UNKNOWN_START_TIME) {
+      // No procfs, so nothing to go on
+      return true;
+    }
+    try {
+      String uptime =
+          new String(Files.readAllBytes(procDir.resolve("uptime")), StandardCharsets.US_ASCII);
+      long bootMillis = (long) (Double.parseDouble(uptime.trim().split(" ")[0]) * 1000);
+      long startMillis = startTime * 1000 / CLOCK_TICKS_PER_SECOND;
+      return bootMillis - startMillis >= MIN_UPTIME_MILLIS;
+    } catch (IOException | RuntimeException __) {
+      return true;
+    }
+  }
+
+  private long directoryLastModified() {
+    try {
+      return Files.getLastModifiedTime(perfDataDir).toMillis();
+    } catch (IOException __) {
+      // No JVMs have run as this user yet
+      return UNKNOWN_START_TIME;
+    }
+  }
+
+  private Map<Long, Long> listRunning() {
+    Map<Long, Long> running = new HashMap<>();
+    try (DirectoryStream<Path> entries = Files.newDirectoryStream(perfDataDir)) {
+      for (Path entry : entries) {
+        long pid = parsePid(entry.getFileName().toString());
+        if (pid > 0 && pid != selfPid) {
+          running.put(pid, startTime(pid));
+        }
+      }
+    } catch (NoSuchFileException __) {
+      // Nothing running
+    } catch (IOException e) {
+      System.err.println("Unable to list " + perfDataDir + ": " + e.getMessage());
+    }
+    // A JVM that was killed can leave its file behind, so drop any that aren't running
+    Iterator<Map.Entry<Long, Long>> it = running.entrySet().iterator();
+    while (it.hasNext()) {
+      Map.Entry<Long, Long> jvm = it.next();
+      if (jvm.getValue() == UNKNOWN_START_TIME && Files.isDirectory(procDir)) {
+        it.remove();
+      }
+    }
+    return running;
+  }
+
+  private static long parsePid(String name) {
+    try {
+      return Long.parseLong(name);
+    } catch (NumberFormatException __) {
+      return -1L;
+    }
+  }
+
+  /**
+   * @return the start time of the process in clock ticks since boot, from field 22 of {@code
+   *     /proc/<pid>/stat}, or {@link #UNKNOWN_START_TIME} if it isn't running or there is no procfs
+   */
+  private long startTime(long pid) {
+    try {
+      String stat =
+          new String(
+              Files.readAllBytes(procDir.resolve(String.valueOf(pid)).resolve("stat")),
+              StandardCharsets.US_ASCII);
+      // The command name can contain spaces and parentheses, so count fields from the last ')'
+      String[] fields = stat.substring(stat.lastIndexOf(')') + 2).trim().split(" ");
+      return Long.parseLong(fields[19]);
+    } catch (IOException | RuntimeException __) {
+      return UNKNOWN_START_TIME;
+    }
+  }
+
+  /** A JVM that hasn't been attached to yet. */
+  private static final class Pending {
+    private final long startTime;
+    private final long firstSeen;
+    private int attempts = 0;
+    private long nextAttempt = Long.MIN_VALUE;
+    // The thread of the last attempt, if it timed out and was left running
+    private Thread abandoned;
+
+    Pending(long startTime, long firstSeen) {
+      this.startTime = startTime;
+      this.firstSeen = firstSeen;
+    }
+
+    /** @return whether this is the JVM with the given start time */
+    boolean isFor(Long runningStartTime) {
+      return runningStartTime != null && runningStartTime == startTime;
+    }
+
+    /** @return the number of attempts that have failed, including this one */
+    int failed(long now, Thread abandoned) {
+      attempts++;
+      nextAttempt = now + retryDelayMillis(attempts);
+      this.abandoned = abandoned;
+      return attempts;
+    }
+  }
+}
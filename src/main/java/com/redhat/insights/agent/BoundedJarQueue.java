@@ -0,0 +1,149 @@
+/* Copyright (C) Red Hat 2026 */
+package com.redhat.insights.agent;
+
+import com.redhat.insights.jars.JarInfo;
+import com.redhat.insights.logging.InsightsLogger;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * The queue of analyzed jars waiting to be sent, with a fixed capacity so that its memory use is
+ * capped however many jars the host application loads.
+ *
+ * <p>When the queue is full, {@link #offer} fails and the jar is left for later, rather than lost:
+ * all such overflows are coalesced into a single "rescan needed" marker. Once the queue has been
+ * drained for a send, the rescan hook runs to pick up the jars that didn't fit.
+ *
+ * <p>The queue also tracks batches of jar updates, for the {@link JarBatcher}: {@link
+ * #isBatchReady()} is true once the waiting jars have reached the maximum batch size, or the oldest
+ * of them has waited for the linger time, and {@link #drainBatch} takes at most one batch. When a
+ * jar fills a batch, the batch listener is told straight away.
+ */
+final class BoundedJarQueue extends ArrayBlockingQueue<JarInfo> {
+  private static final long serialVersionUID = 1L;
+  private static final InsightsLogger logger = AgentLogger.getLogger();
+
+  private final AtomicBoolean rescanNeeded = new AtomicBoolean(false);
+  private final AtomicLong overflowCount = new AtomicLong();
+  private final AtomicLong rescanCount = new AtomicLong();
+  private transient volatile Runnable rescan = () -> {};
+  private transient volatile Runnable batchFull = () -> {};
+
+  private final int maxBatchSize;
+  private final long lingerNanos;
+  private final transient LongSupplier nanoTime;
+  // When the oldest waiting jar was queued, or 0 if nothing is waiting
+  private final AtomicLong firstWaitingNanos = new AtomicLong();
+
+  BoundedJarQueue(int capacity) {
+    this(capacity, Integer.MAX_VALUE, Duration.ZERO);
+  }
+
+  /**
+   * @param capacity the most jars that can wait to be sent
+   * @param maxBatchSize the most jars sent in one update
+   * @param linger how long to wait for more jars before sending a batch smaller than the maximum
+   */
+  BoundedJarQueue(int capacity, int maxBatchSize, Duration linger) {
+    this(capacity, maxBatchSize, linger, System::nanoTime);
+  }
+
+  BoundedJarQueue(int capacity, int maxBatchSize, Duration linger, LongSupplier nanoTime) {
+    super(capacity);
+    this.maxBatchSize = maxBatchSize;
+    this.lingerNanos = linger.toNanos();
+    this.nanoTime = nanoTime;
+  }
+
+  /** @param rescan run after a drain, if anything overflowed since the last rescan */
+  void setRescan(Runnable rescan) {
+    this.rescan = rescan;
+  }
+
+  /** @param batchFull run whenever a newly queued jar makes a full batch */
+  void setBatchListener(Runnable batchFull) {
+    this.batchFull = batchFull;
+  }
+
+  @Override
+  public boolean offer(JarInfo jarInfo) {
+    if (super.offer(jarInfo)) {
+      firstWaitingNanos.compareAndSet(0, nanoTime.getAsLong());
+      if (size() >= maxBatchSize) {
+        batchFull.run();
+      }
+      return true;
+    }
+    overflowCount.incrementAndGet();
+    if (rescanNeeded.compareAndSet(false, true)) {
+      logger.debug("Jar queue is full, will rescan once it has been sent");
+    }
+    return false;
+  }
+
+  /**
+   * @return true if jars are waiting and either make up a full batch, or the oldest of them has
+   *     waited for the linger time
+   */
+  boolean isBatchReady() {
+    if (isEmpty()) {
+      return false;
+    }
+    long first = firstWaitingNanos.get();
+    // A zero start time with jars waiting means one raced with a drain, so don't hold it back
+    return size() >= maxBatchSize || first == 0 || nanoTime.getAsLong() - first >= lingerNanos;
+  }
+
+  /**
+   * Takes the next batch, whether or not it is ready.
+   *
+   * @param c the collection to add the jars to
+   * @return the number of jars taken, never more than the maximum batch size
+   */
+  int drainBatch(Collection<? super JarInfo> c) {
+    return drainTo(c, maxBatchSize);
+  }
+
+  // drainTo(Collection) delegates to this, so this covers both
+  @Override
+  public int drainTo(Collection<? super JarInfo> c, int maxElements) {
+    int drained = super.drainTo(c, maxElements);
+    if (isEmpty()) {
+      firstWaitingNanos.set(0);
+    }
+    // Otherwise leave the start time alone, so the jars left behind go in the next batch
+    if (rescanNeeded.compareAndSet(true, false)) {
+      rescanCount.incrementAndGet();
+      logger.debug("Rescanning for jars that overflowed the jar queue");
+      try {
+        rescan.run();
+      } catch (RuntimeException e) {
+        logger.warning("Jar rescan failed", e);
+      }
+    }
+    return drained;
+  }
+
+  /** @return the number of jars currently waiting */
+  int getDepth() {
+    return size();
+  }
+
+  /** @return the number of jars that didn't fit, since the agent started */
+  long getOverflowCount() {
+    return overflowCount.get();
+  }
+
+  /** @return the number of rescans run to recover from overflows */
+  long getRescanCount() {
+    return rescanCount.get();
+  }
+
+  boolean isRescanNeeded() {
+    return rescanNeeded.get();
+  }
+}
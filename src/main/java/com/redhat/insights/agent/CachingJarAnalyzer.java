@@ -0,0 +1,118 @@
+/* Copyright (C) Red Hat 2026 */
+package com.redhat.insights.agent;
+
+import com.redhat.insights.jars.JarAnalyzer;
+import com.redhat.insights.jars.JarInfo;
+import com.redhat.insights.logging.InsightsLogger;
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.Optional;
+
+/**
+ * Wraps a {@link JarAnalyzer} with an optional {@link JarFingerprintCache}. On a cache hit the jar
+ * isn't opened at all; only plain files and archives nested inside plain files can be cached, as
+ * those are the only locations we can cheaply check for changes.
+ */
+final class CachingJarAnalyzer {
+  private static final InsightsLogger logger = AgentLogger.getLogger();
+
+  private static final String FILE_PROTOCOL = "file";
+  private static final String JAR_PREFIX = "jar:";
+  private static final String BANG_SEPARATOR = "!/";
+
+  private final JarAnalyzer analyzer;
+  private final JarFingerprintCache cache;
+  private final AgentMetrics metrics = AgentMetrics.getInstance();
+
+  CachingJarAnalyzer() {
+    this(null);
+  }
+
+  /** @param cache the fingerprint cache to consult, or null to always analyze */
+  CachingJarAnalyzer(JarFingerprintCache cache) {
+    this.analyzer = new JarAnalyzer(logger, true);
+    this.cache = cache;
+  }
+
+  /**
+   * Same contract as {@link JarAnalyzer#process(URL)}.
+   *
+   * @param url the location of the jar
+   * @return the jar's info, or empty if it isn't something we report on
+   * @throws URISyntaxException if the URL can't be parsed
+   */
+  Optional<JarInfo> process(URL url) throws URISyntaxException {
+    Optional<CacheKey> oKey = keyFor(url);
+    if (cache == null || !oKey.isPresent()) {
+      return analyze(url, oKey);
+    }
+    CacheKey key = oKey.get();
+    Optional<JarInfo> cached = cache.get(key.location, key.size, key.lastModified);
+    if (cached.isPresent()) {
+      metrics.recordJarCacheHit();
+      return cached;
+    }
+    Optional<JarInfo> oJar = analyze(url, oKey);
+    oJar.ifPresent(jarInfo -> cache.put(key.location, key.size, key.lastModified, jarInfo));
+    return oJar;
+  }
+
+  private Optional<JarInfo> analyze(URL url, Optional<CacheKey> oKey) throws URISyntaxException {
+    Optional<JarInfo> oJar = analyzer.process(url);
+    // A plain file is hashed whole, so its size is the number of bytes hashed. The size of a
+    // nested jar isn't known without opening the outer archive.
+    long size =
+        FILE_PROTOCOL.equals(url.getProtocol()) ? oKey.map(key -> key.size).orElse(-1L) : -1L;
+    oJar.ifPresent(__ -> metrics.recordJarAnalyzed(size));
+    return oJar;
+  }
+
+  /** Writes any newly analyzed jars back to the fingerprint cache, if there is one. */
+  void saveCache() {
+    if (cache != null) {
+      cache.save();
+    }
+  }
+
+  static Optional<CacheKey> keyFor(URL url) {
+    try {
+      String location = url.toExternalForm();
+      String nested = "";
+      if (location.startsWith(JAR_PREFIX)) {
+        location = location.substring(JAR_PREFIX.length());
+        int bang = location.indexOf(BANG_SEPARATOR);
+        if (bang > 0) {
+          nested = location.substring(bang);
+          location = location.substring(0, bang);
+        }
+      }
+      URI uri = new URI(location);
+      if (!FILE_PROTOCOL.equals(uri.getScheme())) {
+        return Optional.empty();
+      }
+      File file = new File(uri);
+      if (!file.isFile()) {
+        return Optional.empty();
+      }
+      return Optional.of(
+          new CacheKey(file.getCanonicalPath() + nested, file.length(), file.lastModified()));
+    } catch (URISyntaxException | IllegalArgumentException | IOException e) {
+      return Optional.empty();
+    }
+  }
+
+  static final class CacheKey {
+    final String location;
+    final long size;
+    final long lastModified;
+
+    CacheKey(String location, long size, long lastModified) {
+      this.location = location;
+      this.size = size;
+      this.lastModified = lastModified;
+    }
+  }
+}
@@ -0,0 +1,86 @@
+/* Copyright (C) Red Hat 2026 */
+package com.redhat.insights.agent;
+
+import com.redhat.insights.logging.InsightsLogger;
+import java.lang.ref.WeakReference;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * Lets other parts of the agent react to specific classes being loaded, as seen by the {@link
+ * ClassNoticer}. Only classes that someone has asked to watch are recorded, and each listener is
+ * called at most once per class name, on the thread loading the class - so listeners must be quick.
+ */
+final class ClassArrivalWatcher {
+  private static final InsightsLogger logger = AgentLogger.getLogger();
+
+  private static final ClassArrivalWatcher INSTANCE = new ClassArrivalWatcher();
+
+  // Keyed by internal name (with slashes), as that is what the transformer is given
+  private final Map<String, List<Consumer<ClassLoader>>> listeners = new ConcurrentHashMap<>();
+  // Weak, so that recording a class doesn't stop its loader being unloaded
+  private final Map<String, WeakReference<ClassLoader>> arrived = new ConcurrentHashMap<>();
+
+  ClassArrivalWatcher() {}
+
+  static ClassArrivalWatcher getInstance() {
+    return INSTANCE;
+  }
+
+  /**
+   * @param className the binary name of the class to watch for, e.g. {@code java.lang.String}
+   * @param listener called with the defining loader when the class is first seen
+   */
+  void watch(String className, Consumer<ClassLoader> listener) {
+    listeners
+        .computeIfAbsent(toInternalName(className), __ -> new CopyOnWriteArrayList<>())
+        .add(listener);
+  }
+
+  /**
+   * @param internalName the internal name of a class being loaded, may be null
+   * @param loader the defining loader of the class, null for the bootstrap loader
+   */
+  void noticed(String internalName, ClassLoader loader) {
+    if (internalName == null || listeners.isEmpty()) {
+      return;
+    }
+    List<Consumer<ClassLoader>> watching = listeners.get(internalName);
+    if (watching == null
+        || arrived.putIfAbsent(internalName, new WeakReference<>(loader)) != null) {
+      return;
+    }
+    for (Consumer<ClassLoader> listener : watching) {
+      try {
+        listener.accept(loader);
+      } catch (RuntimeException e) {
+        logger.debug("Ignoring exception from class arrival listener for " + internalName, e);
+      }
+    }
+  }
+
+  /**
+   * @param className the binary name of a watched class
+   * @return true if the class has been seen loading since it was watched
+   */
+  boolean hasArrived(String className) {
+    return arrived.containsKey(toInternalName(className));
+  }
+
+  /**
+   * @param className the binary name of a watched class
+   * @return the loader the class was first seen loading from, or null if that was the bootstrap
+   *     loader, it has since been collected, or the class hasn't arrived
+   */
+  ClassLoader getLoader(String className) {
+    WeakReference<ClassLoader> loader = arrived.get(toInternalName(className));
+    return loader == null ? null : loader.get();
+  }
+
+  private static String toInternalName(String className) {
+    return className.replace('.', '/');
+  }
+}
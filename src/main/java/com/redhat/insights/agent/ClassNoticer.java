@@ -1,4 +1,4 @@
-/* Copyright (C) Red Hat 2023-2024 */
+/* Copyright (C) Red Hat 2023-2026 */
 package com.redhat.insights.agent;
 
 import com.redhat.insights.jars.JarAnalyzer;
@@ -8,26 +8,100 @@ import java.lang.instrument.ClassFileTransformer;
 import java.lang.instrument.IllegalClassFormatException;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.security.CodeSource;
 import java.security.ProtectionDomain;
-import java.util.HashSet;
 import java.util.Optional;
+import java.util.Queue;
 import java.util.Set;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 public final class ClassNoticer implements ClassFileTransformer {
   private static final InsightsLogger logger = AgentLogger.getLogger();
 
+  private static final long ANALYSIS_THREAD_KEEP_ALIVE_SECS = 30L;
+
   private final BlockingQueue<JarInfo> jarsToSend;
-  private final JarAnalyzer analyzer;
+  // Null while analysis is being held back, see startAnalysis()
+  private volatile CachingJarAnalyzer analyzer;
+  private final AgentMetrics metrics;
+
+  // Only present when JAR analysis has been moved off the class-loading threads
+  private final ExecutorService analysisExecutor;
+
+  // Newly-seen jars waiting for analysis to start
+  private final Queue<URL> heldJars = new ConcurrentLinkedQueue<>();
 
   // The belt-and-braces of keeping track of both JAR hashes and JAR URLs we've seen
-  // is necessary for performance reasons
-  private final Set<String> seenJarHashes = new HashSet<>();
-  private final Set<String> seenUrls = new HashSet<>();
+  // is necessary for performance reasons. transform() is called concurrently from every
+  // class-loading thread, so these must be concurrent: contains() never locks, and add() tells
+  // us whether this thread is the one that claimed the entry.
+  private final Set<String> seenJarHashes = ConcurrentHashMap.newKeySet();
+  private final Set<String> seenUrls = ConcurrentHashMap.newKeySet();
+
+  // Identity-keyed front for seenUrls, so already-seen classes don't need any String work
+  private final CodeSourceCache seenCodeSources = new CodeSourceCache();
+
+  // Number of distinct code sources claimed so far, used to judge when discovery has gone quiet
+  private final AtomicLong codeSourceCount = new AtomicLong();
 
   public ClassNoticer(BlockingQueue<JarInfo> jarsToSend) {
+    this(jarsToSend, false);
+  }
+
+  /**
+   * @param jarsToSend the queue that analyzed jars are handed to for the next send
+   * @param analyzeInBackground if true, hashing and manifest reading happen on a dedicated
+   *     low-priority thread rather than on the thread that loaded the class
+   */
+  public ClassNoticer(BlockingQueue<JarInfo> jarsToSend, boolean analyzeInBackground) {
+    this(jarsToSend, analyzeInBackground, new CachingJarAnalyzer());
+  }
+
+  /**
+   * @param jarsToSend the queue that analyzed jars are handed to for the next send
+   * @param analyzeInBackground if true, analysis happens on a dedicated low-priority thread
+   * @param analyzer the analyzer to use, or null to only record newly-seen jars until {@link
+   *     #startAnalysis} is called
+   */
+  ClassNoticer(
+      BlockingQueue<JarInfo> jarsToSend, boolean analyzeInBackground, CachingJarAnalyzer analyzer) {
+    this(jarsToSend, analyzeInBackground, analyzer, AgentMetrics.getInstance());
+  }
+
+  ClassNoticer(
+      BlockingQueue<JarInfo> jarsToSend,
+      boolean analyzeInBackground,
+      CachingJarAnalyzer analyzer,
+      AgentMetrics metrics) {
     this.jarsToSend = jarsToSend;
-    this.analyzer = new JarAnalyzer(logger, true);
+    this.metrics = metrics;
+    this.analyzer = analyzer;
+    this.analysisExecutor = analyzeInBackground ? createAnalysisExecutor() : null;
+  }
+
+  private static ExecutorService createAnalysisExecutor() {
+    ThreadPoolExecutor executor =
+        new ThreadPoolExecutor(
+            1,
+            1,
+            ANALYSIS_THREAD_KEEP_ALIVE_SECS,
+            TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(),
+            r -> {
+              Thread t = new Thread(r, "insights-jar-analyzer");
+              t.setDaemon(true);
+              t.setPriority(Thread.MIN_PRIORITY);
+              return t;
+            });
+    executor.allowCoreThreadTimeOut(true);
+    return executor;
   }
 
   /**
@@ -51,31 +125,146 @@ public final class ClassNoticer implements ClassFileTransformer {
       byte[] bytes)
       throws IllegalClassFormatException {
 
+    long start = System.nanoTime();
+    ClassArrivalWatcher.getInstance().noticed(className, loader);
+    notice(protectionDomain);
+    metrics.recordTransform(System.nanoTime() - start);
+
+    // Return unmodified bytes
+    return bytes;
+  }
+
+  /**
+   * Records the code source of a protection domain, analyzing it if it is one we haven't seen
+   * before. This is also used to sweep classes that were loaded while the transformer was not
+   * registered.
+   *
+   * @param protectionDomain the protection domain of a loaded class, may be null
+   */
+  void notice(ProtectionDomain protectionDomain) {
     // From the class, get the jar it came from
-    if ((protectionDomain == null) || (protectionDomain.getCodeSource() == null)) {
-      return bytes;
+    if (protectionDomain == null) {
+      return;
+    }
+    CodeSource codeSource = protectionDomain.getCodeSource();
+    if (codeSource == null) {
+      return;
+    }
+
+    // Fast path: the vast majority of classes come from a code source we've already handled
+    if (seenCodeSources.contains(codeSource)) {
+      return;
+    }
+    URL jarUrl = codeSource.getLocation();
+    if (jarUrl == null) {
+      return;
     }
-    URL jarUrl = protectionDomain.getCodeSource().getLocation();
     String jarLoc = jarUrl.toString();
+    seenCodeSources.add(codeSource);
 
     // Special-case WEB-INF/classes/ for upfront attach to .war files
     if (jarLoc.endsWith("WEB-INF/classes!/")) {
-      return bytes;
+      return;
+    }
+
+    // If we haven't seen it before, claim it and enqueue it. Only one thread can win the add()
+    if (!seenUrls.contains(jarLoc) && seenUrls.add(jarLoc)) {
+      codeSourceCount.incrementAndGet();
+      metrics.recordCodeSourceSeen();
+      if (analyzer == null) {
+        hold(jarUrl);
+      } else {
+        dispatch(jarUrl);
+      }
     }
+  }
 
-    // If we haven't seen it before, add it to the set and enqueue it
+  private void dispatch(URL jarUrl) {
+    if (analysisExecutor == null) {
+      analyze(jarUrl);
+    } else {
+      analysisExecutor.execute(() -> analyze(jarUrl));
+    }
+  }
+
+  private void hold(URL jarUrl) {
+    heldJars.add(jarUrl);
+    // Analysis may have started since we checked, after the held jars were released
+    if (analyzer != null) {
+      releaseHeldJars();
+    }
+  }
+
+  private void releaseHeldJars() {
+    URL jarUrl;
+    while ((jarUrl = heldJars.poll()) != null) {
+      dispatch(jarUrl);
+    }
+  }
+
+  /**
+   * Starts analyzing jars, for a noticer created without an analyzer. Jars seen up to now are
+   * analyzed on the calling thread, or handed to the analysis thread if there is one.
+   *
+   * @param analyzer the analyzer to use from now on
+   */
+  void startAnalysis(CachingJarAnalyzer analyzer) {
+    this.analyzer = analyzer;
+    releaseHeldJars();
+  }
+
+  /**
+   * Notices the code source of each of the given classes. Used to catch up on classes loaded while
+   * the transformer wasn't registered.
+   *
+   * @param classes classes that are already loaded
+   */
+  void noticeAll(Class<?>[] classes) {
+    for (Class<?> clazz : classes) {
+      try {
+        notice(clazz.getProtectionDomain());
+      } catch (SecurityException __) {
+        // Not permitted to look at this one, skip it
+      }
+    }
+  }
+
+  /**
+   * Notices the code sources of all the given classes again, including ones already seen, so that
+   * jars forgotten because the queue was full are analyzed again.
+   *
+   * @param classes classes that are already loaded
+   */
+  void rescan(Class<?>[] classes) {
+    seenCodeSources.clear();
+    noticeAll(classes);
+  }
+
+  long getCodeSourceCount() {
+    return codeSourceCount.get();
+  }
+
+  /**
+   * Hashes the jar and reads its metadata. This is the expensive part of noticing a new jar, so it
+   * runs on the analysis thread when one is configured.
+   *
+   * @param jarUrl the code source location of a newly-seen jar
+   */
+  void analyze(URL jarUrl) {
     try {
-      if (!seenUrls.contains(jarLoc)) {
-        seenUrls.add(jarLoc);
-        Optional<JarInfo> oJar = analyzer.process(jarUrl);
-        if (oJar.isPresent()) {
-          JarInfo jarInfo = oJar.get();
-          String sha512 = jarInfo.attributes().get(JarAnalyzer.SHA512_CHECKSUM_KEY);
-          if (!seenJarHashes.contains(sha512)) {
-            seenJarHashes.add(sha512);
-            if (!jarsToSend.offer(jarInfo)) {
-              logger.error("Could not enqueue info for jar: " + jarUrl);
+      Optional<JarInfo> oJar = analyzer.process(jarUrl);
+      if (oJar.isPresent()) {
+        JarInfo jarInfo = oJar.get();
+        String sha512 = jarInfo.attributes().get(JarAnalyzer.SHA512_CHECKSUM_KEY);
+        // A jar whose checksum could not be computed can't be de-duplicated, so always send it
+        if (sha512 == null || seenJarHashes.add(sha512)) {
+          if (!jarsToSend.offer(jarInfo)) {
+            // The queue is full. Forget the jar, so that a later rescan picks it up again
+            if (sha512 != null) {
+              seenJarHashes.remove(sha512);
             }
+            seenUrls.remove(jarUrl.toString());
+            logger.debug("Could not enqueue info for jar, deferring it: " + jarUrl);
           }
         }
       }
@@ -83,8 +272,5 @@ public final class ClassNoticer implements ClassFileTransformer {
       // Shouldn't be possible - so just log and carry on
       logger.info("Jar with unrecognized URI seen: " + jarUrl);
     }
-
-    // Return unmodified bytes
-    return bytes;
   }
 }
@@ -0,0 +1,126 @@
+/* Copyright (C) Red Hat 2026 */
+package com.redhat.insights.agent;
+
+import com.redhat.insights.logging.InsightsLogger;
+import java.lang.instrument.Instrumentation;
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watches how quickly a {@link ClassNoticer} is discovering new code sources and takes it out of
+ * the class definition path once discovery goes quiet.
+ *
+ * <p>New code sources are counted over a sliding window made up of {@link #SAMPLES_PER_WINDOW}
+ * samples. Once a full window has passed with no more than the configured threshold of new
+ * arrivals, the transformer is removed. From then on, late arrivals are picked up by periodically
+ * sweeping {@link Instrumentation#getAllLoadedClasses()}; if a sweep finds anything new (e.g. a hot
+ * redeploy) the transformer is put back and the window starts again.
+ */
+final class ClassNoticerMonitor {
+  private static final InsightsLogger logger = AgentLogger.getLogger();
+
+  static final int SAMPLES_PER_WINDOW = 10;
+  private static final long MIN_SAMPLE_MILLIS = 1000L;
+
+  private final Instrumentation instrumentation;
+  private final ClassNoticer noticer;
+  private final long threshold;
+  private final long sampleMillis;
+  private final long sweepEveryTicks;
+
+  private final long[] samples = new long[SAMPLES_PER_WINDOW];
+  private long ticks = 0;
+  private long ticksSinceSweep = 0;
+  private long lastCount = 0;
+  private boolean registered = true;
+
+  private ScheduledExecutorService executor;
+
+  /**
+   * @param instrumentation the instrumentation the noticer is registered with
+   * @param noticer the (already registered) noticer to monitor
+   * @param quietWindow length of the sliding window that must be quiet before deregistering
+   * @param threshold the most new code sources a window may see and still count as quiet
+   * @param sweepInterval how often to sweep loaded classes once deregistered
+   */
+  ClassNoticerMonitor(
+      Instrumentation instrumentation,
+      ClassNoticer noticer,
+      Duration quietWindow,
+      long threshold,
+      Duration sweepInterval) {
+    this.instrumentation = instrumentation;
+    this.noticer = noticer;
+    this.threshold = threshold;
+    this.sampleMillis = Math.max(MIN_SAMPLE_MILLIS, quietWindow.toMillis() / SAMPLES_PER_WINDOW);
+    this.sweepEveryTicks = Math.max(1L, sweepInterval.toMillis() / sampleMillis);
+    this.lastCount = noticer.getCodeSourceCount();
+  }
+
+  void start() {
+    executor =
+        Executors.newSingleThreadScheduledExecutor(
+            r -> {
+              Thread t = new Thread(r, "insights-noticer-monitor");
+              t.setDaemon(true);
+              return t;
+            });
+    executor.scheduleWithFixedDelay(this::tick, sampleMillis, sampleMillis, TimeUnit.MILLISECONDS);
+  }
+
+  void shutdown() {
+    if (executor != null) {
+      executor.shutdownNow();
+    }
+  }
+
+  /** Takes one sample. Exceptions are swallowed, as they would otherwise cancel the schedule. */
+  synchronized void tick() {
+    try {
+      if (!registered && ++ticksSinceSweep >= sweepEveryTicks) {
+        ticksSinceSweep = 0;
+        sweep();
+      }
+
+      long count = noticer.getCodeSourceCount();
+      long arrivals = count - lastCount;
+      lastCount = count;
+      samples[(int) (ticks++ % SAMPLES_PER_WINDOW)] = arrivals;
+
+      if (registered) {
+        if (ticks >= SAMPLES_PER_WINDOW && windowTotal() <= threshold) {
+          instrumentation.removeTransformer(noticer);
+          registered = false;
+          ticksSinceSweep = 0;
+          logger.debug("Class loading has reached steady state, removed Insights class noticer");
+        }
+      } else if (arrivals > 0) {
+        instrumentation.addTransformer(noticer);
+        registered = true;
+        ticks = 0;
+        logger.debug("Sweep found " + arrivals + " new code sources, re-added class noticer");
+      }
+    } catch (Throwable t) {
+      logger.error("Error while monitoring Insights class noticer", t);
+    }
+  }
+
+  /** Feeds every currently loaded class through the noticer, to catch late arrivals. */
+  void sweep() {
+    noticer.noticeAll(instrumentation.getAllLoadedClasses());
+  }
+
+  boolean isRegistered() {
+    return registered;
+  }
+
+  private long windowTotal() {
+    long total = 0;
+    for (long sample : samples) {
+      total += sample;
+    }
+    return total;
+  }
+}
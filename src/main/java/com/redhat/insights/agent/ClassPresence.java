@@ -0,0 +1,48 @@
+/* Copyright (C) Red Hat 2026 */
+package com.redhat.insights.agent;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Checks whether a class is available by looking for its {@code .class} resource, rather than
+ * loading it. This doesn't run static initializers in the host application, and a miss doesn't cost
+ * a {@link ClassNotFoundException} with a stack trace. Answers, positive and negative, are cached,
+ * as the classpath being probed doesn't change.
+ */
+final class ClassPresence {
+  private static final ClassPresence INSTANCE =
+      new ClassPresence(ClassPresence.class.getClassLoader());
+
+  private final ClassLoader loader;
+  // A loader with no parent delegates resource lookups straight to the bootstrap loader
+  private final ClassLoader resourceLoader;
+  private final Map<String, Boolean> cache = new ConcurrentHashMap<>();
+
+  /** @param loader the loader to probe, or null for the bootstrap loader */
+  ClassPresence(ClassLoader loader) {
+    this.loader = loader;
+    this.resourceLoader = loader != null ? loader : new ClassLoader(null) {};
+  }
+
+  /** @return a probe of the loader the agent itself was loaded by */
+  static ClassPresence getInstance() {
+    return INSTANCE;
+  }
+
+  ClassLoader getLoader() {
+    return loader;
+  }
+
+  /**
+   * @param className the binary name of the class, e.g. {@code java.lang.String}
+   * @return true if the loader can see the class
+   */
+  boolean isPresent(String className) {
+    return cache.computeIfAbsent(className, this::probe);
+  }
+
+  private boolean probe(String className) {
+    return resourceLoader.getResource(className.replace('.', '/') + ".class") != null;
+  }
+}
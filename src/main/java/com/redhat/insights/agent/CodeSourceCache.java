@@ -0,0 +1,56 @@
+/* Copyright (C) Red Hat 2026 */
+package com.redhat.insights.agent;
+
+import java.lang.ref.WeakReference;
+import java.security.CodeSource;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A small, lossy cache of the {@link CodeSource} instances that {@link ClassNoticer} has already
+ * dealt with, keyed on object identity.
+ *
+ * <p>Class loaders hand the same {@code CodeSource} to every class they define from a given jar, so
+ * a hit here lets the transformer return without touching the location URL at all. Lookups take no
+ * locks and allocate nothing. Slots are direct-mapped and simply overwritten on collision, so a
+ * miss only means the caller has to fall back to its (slower) URL-based check. Entries are weakly
+ * held so we never keep an undeployed application's class loader alive.
+ */
+final class CodeSourceCache {
+  static final int DEFAULT_CAPACITY = 2048;
+
+  private final AtomicReferenceArray<WeakReference<CodeSource>> slots;
+  private final int mask;
+
+  CodeSourceCache() {
+    this(DEFAULT_CAPACITY);
+  }
+
+  /** @param capacity number of slots, which must be a power of two */
+  CodeSourceCache(int capacity) {
+    if (Integer.bitCount(capacity) != 1) {
+      throw new IllegalArgumentException("Capacity must be a power of two: " + capacity);
+    }
+    this.slots = new AtomicReferenceArray<>(capacity);
+    this.mask = capacity - 1;
+  }
+
+  boolean contains(CodeSource codeSource) {
+    WeakReference<CodeSource> ref = slots.get(indexFor(codeSource));
+    return ref != null && ref.get() == codeSource;
+  }
+
+  void add(CodeSource codeSource) {
+    slots.set(indexFor(codeSource), new WeakReference<>(codeSource));
+  }
+
+  void clear() {
+    for (int i = 0; i < slots.length(); i++) {
+      slots.set(i, null);
+    }
+  }
+
+  private int indexFor(CodeSource codeSource) {
+    int h = System.identityHashCode(codeSource);
+    return (h ^ (h >>> 16)) & mask;
+  }
+}
@@ -0,0 +1,105 @@
+/* Copyright (C) Red Hat 2026 */
+package com.redhat.insights.agent;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.redhat.insights.jars.JarAnalyzer;
+import com.redhat.insights.jars.JarInfo;
+import com.redhat.insights.jars.JarInfoSubreport;
+import com.redhat.insights.reports.InsightsSubreport;
+import java.io.IOException;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Writes a jars subreport with smaller checksums. Of the three checksums the library records, only
+ * the SHA-512 is kept, as it identifies a jar on its own, and it is written in base64 rather than
+ * hex, under {@value #SHA512_BASE64_KEY} so it can't be mistaken for the hex form. Checksums are
+ * random data, which compression can't shrink, so this is a saving that survives gzip: the hex
+ * SHA-1 and SHA-256 carry 52 bytes of it per jar. Everything else is as the library's jars
+ * serializer writes it, plus {@code "encoding": "compact"}.
+ *
+ * <p>Everything is written straight to the generator, without building the JSON tree first.
+ */
+public class CompactJarInfoSubreportSerializer extends JsonSerializer<InsightsSubreport> {
+  static final String ENCODING = "compact";
+  static final String SHA512_BASE64_KEY = "sha512Base64";
+
+  private static final Base64.Encoder BASE64 = Base64.getEncoder().withoutPadding();
+
+  @Override
+  public void serialize(
+      InsightsSubreport insightsSubreport,
+      JsonGenerator generator,
+      SerializerProvider serializerProvider)
+      throws IOException {
+    JarInfoSubreport subreport = (JarInfoSubreport) insightsSubreport;
+    generator.writeStartObject();
+    generator.writeStringField("version", subreport.getVersion());
+    writeJars(generator, subreport.getJarInfos(), true);
+    generator.writeEndObject();
+    generator.flush();
+  }
+
+  /**
+   * Writes the {@code jars} field, preceded by the {@code encoding} field if compact.
+   *
+   * @param generator positioned inside the subreport object
+   * @param jarInfos the jars to write
+   * @param compact whether to write only the SHA-512 checksum, in base64
+   */
+  static void writeJars(JsonGenerator generator, Collection<JarInfo> jarInfos, boolean compact)
+      throws IOException {
+    if (compact) {
+      generator.writeStringField("encoding", ENCODING);
+    }
+    generator.writeFieldName("jars");
+    generator.writeStartArray();
+    for (JarInfo jarInfo : jarInfos) {
+      generator.writeStartObject();
+      generator.writeStringField("name", jarInfo.name());
+      generator.writeStringField("version", jarInfo.version());
+      generator.writeObjectFieldStart("attributes");
+      for (Map.Entry<String, String> attribute : jarInfo.attributes().entrySet()) {
+        String key = attribute.getKey();
+        if (!compact || !isChecksumKey(key)) {
+          generator.writeStringField(key, attribute.getValue());
+        } else if (JarAnalyzer.SHA512_CHECKSUM_KEY.equals(key)) {
+          byte[] hash = decodeHex(attribute.getValue());
+          // Base64 uses the hex digits too, so a value that isn't hex is left out, not passed on
+          if (hash != null) {
+            generator.writeStringField(SHA512_BASE64_KEY, BASE64.encodeToString(hash));
+          }
+        }
+      }
+      generator.writeEndObject();
+      generator.writeEndObject();
+    }
+    generator.writeEndArray();
+  }
+
+  private static boolean isChecksumKey(String key) {
+    return JarAnalyzer.SHA1_CHECKSUM_KEY.equals(key)
+        || JarAnalyzer.SHA256_CHECKSUM_KEY.equals(key)
+        || JarAnalyzer.SHA512_CHECKSUM_KEY.equals(key);
+  }
+
+  /** @return the bytes, or null if the value isn't an even number of hex digits */
+  static byte[] decodeHex(String hex) {
+    if (hex == null || hex.isEmpty() || hex.length() % 2 != 0) {
+      return null;
+    }
+    byte[] out = new byte[hex.length() / 2];
+    for (int i = 0; i < out.length; i++) {
+      int high = Character.digit(hex.charAt(2 * i), 16);
+      int low = Character.digit(hex.charAt(2 * i + 1), 16);
+      if (high < 0 || low < 0) {
+        return null;
+      }
+      out[i] = (byte) ((high << 4) | low);
+    }
+    return out;
+  }
+}
@@ -0,0 +1,160 @@
+/* Copyright (C) Red Hat 2026 */
+package com.redhat.insights.agent;
+
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.redhat.insights.jars.JarInfo;
+import com.redhat.insights.jars.JarInfoSubreport;
+import com.redhat.insights.logging.InsightsLogger;
+import com.redhat.insights.reports.InsightsSubreport;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A jars subreport that, once the server has accepted a full list, only sends the jars added and
+ * removed since, plus a digest of the full set so the server can tell if its copy has drifted.
+ * Jars the server was sent in updates are kept in the full set, as they were noticed loading, and
+ * only classpath jars are ever reported removed.
+ * Until then, or if nothing was ever accepted, it sends the full list like {@link
+ * JarInfoSubreport}.
+ *
+ * <p>The baseline is taken when the report is generated, so every serialization of one report - for
+ * the ID hash, debug logging and retries - is the same.
+ */
+final class DeltaJarInfoSubreport extends JarInfoSubreport {
+  private final JarInfoSubreport delegate;
+  private final AcceptedJars acceptedJars;
+  private final boolean compact;
+
+  // Set by generateReport(), and only read when serializing the report it generated
+  private volatile Delta delta = Delta.EMPTY;
+
+  DeltaJarInfoSubreport(
+      InsightsLogger logger, JarInfoSubreport delegate, AcceptedJars acceptedJars) {
+    this(logger, delegate, acceptedJars, false);
+  }
+
+  /** @param compact whether to write the jars with the compact encoding */
+  DeltaJarInfoSubreport(
+      InsightsLogger logger,
+      JarInfoSubreport delegate,
+      AcceptedJars acceptedJars,
+      boolean compact) {
+    super(logger);
+    this.delegate = delegate;
+    this.acceptedJars = acceptedJars;
+    this.compact = compact;
+  }
+
+  @Override
+  public void generateReport() {
+    delegate.generateReport();
+    Collection<JarInfo> jarInfos = delegate.getJarInfos();
+    Set<String> baseline = acceptedJars.snapshot();
+    Set<String> lastClasspath = acceptedJars.classpathSnapshot();
+    Set<String> current = AcceptedJars.hashesOf(jarInfos);
+
+    if (lastClasspath == null) {
+      delta =
+          new Delta(
+              false,
+              new ArrayList<>(jarInfos),
+              Collections.emptyList(),
+              AcceptedJars.digest(current),
+              null,
+              current,
+              current);
+      return;
+    }
+    List<JarInfo> added = new ArrayList<>();
+    for (JarInfo jarInfo : jarInfos) {
+      String sha512 = AcceptedJars.sha512(jarInfo);
+      // A jar without a hash can't be matched, so always send it
+      if (sha512 == null || !baseline.contains(sha512)) {
+        added.add(jarInfo);
+      }
+    }
+    // Only classpath jars can be missed here. Jars from updates were noticed as they loaded, and
+    // stay loaded, so they are kept.
+    List<String> removed = new ArrayList<>();
+    for (String sha512 : lastClasspath) {
+      if (!current.contains(sha512)) {
+        removed.add(sha512);
+      }
+    }
+    Collections.sort(removed);
+    Set<String> result = new HashSet<>(baseline);
+    result.removeAll(removed);
+    result.addAll(current);
+    delta =
+        new Delta(
+            true,
+            added,
+            removed,
+            AcceptedJars.digest(result),
+            AcceptedJars.digest(baseline),
+            current,
+            result);
+    logger.debug("Jars delta: " + added.size() + " added, " + removed.size() + " removed");
+  }
+
+  @Override
+  public Collection<JarInfo> getJarInfos() {
+    return delegate.getJarInfos();
+  }
+
+  @Override
+  public String getVersion() {
+    return delegate.getVersion();
+  }
+
+  @Override
+  public JsonSerializer<InsightsSubreport> getSerializer() {
+    return new DeltaJarInfoSubreportSerializer();
+  }
+
+  boolean isCompact() {
+    return compact;
+  }
+
+  Delta getDelta() {
+    return delta;
+  }
+
+  static final class Delta {
+    static final Delta EMPTY =
+        new Delta(
+            false, Collections.emptyList(), Collections.emptyList(), null, null, null, null);
+
+    final boolean isDelta;
+    // Every jar for a full report, or only the added ones for a delta
+    final List<JarInfo> jars;
+    final List<String> removed;
+    // Of the set the server holds once it has applied this report
+    final String digest;
+    final String baselineDigest;
+    // The hashes of the classpath jars, and of the set the server holds once it has applied this
+    final Set<String> current;
+    final Set<String> result;
+
+    Delta(
+        boolean isDelta,
+        List<JarInfo> jars,
+        List<String> removed,
+        String digest,
+        String baselineDigest,
+        Set<String> current,
+        Set<String> result) {
+      this.isDelta = isDelta;
+      this.jars = jars;
+      this.removed = removed;
+      this.digest = digest;
+      this.baselineDigest = baselineDigest;
+      this.current = current;
+      this.result = result;
+    }
+  }
+}
@@ -0,0 +1,51 @@
+/* Copyright (C) Red Hat 2026 */
+package com.redhat.insights.agent;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.redhat.insights.reports.InsightsSubreport;
+import java.io.IOException;
+
+/**
+ * Writes the same shape as the library's jars serializer (or the {@link
+ * CompactJarInfoSubreportSerializer compact} one), with the jar list cut down to the added jars in
+ * a delta, and these extra fields:
+ *
+ * <ul>
+ *   <li>{@code delta}: whether {@code jars} only holds the jars added since the baseline
+ *   <li>{@code removed}: the SHA-512s of classpath jars in the baseline that have gone, for a delta,
+ *       always in hex, as in the library's {@code sha512Checksum} attribute
+ *   <li>{@code total}: the number of classpath jars
+ *   <li>{@code digest}: the {@link AcceptedJars#digest digest} of the full set once this is applied
+ *   <li>{@code baseline_digest}: the digest of the set the delta is against, for a delta
+ * </ul>
+ */
+public class DeltaJarInfoSubreportSerializer extends JsonSerializer<InsightsSubreport> {
+  @Override
+  public void serialize(
+      InsightsSubreport insightsSubreport,
+      JsonGenerator generator,
+      SerializerProvider serializerProvider)
+      throws IOException {
+    DeltaJarInfoSubreport subreport = (DeltaJarInfoSubreport) insightsSubreport;
+    DeltaJarInfoSubreport.Delta delta = subreport.getDelta();
+    generator.writeStartObject();
+    generator.writeStringField("version", subreport.getVersion());
+    generator.writeBooleanField("delta", delta.isDelta);
+    CompactJarInfoSubreportSerializer.writeJars(generator, delta.jars, subreport.isCompact());
+    if (delta.isDelta) {
+      generator.writeFieldName("removed");
+      generator.writeStartArray();
+      for (String sha512 : delta.removed) {
+        generator.writeString(sha512);
+      }
+      generator.writeEndArray();
+      generator.writeStringField("baseline_digest", delta.baselineDigest);
+    }
+    generator.writeNumberField("total", subreport.getJarInfos().size());
+    generator.writeStringField("digest", delta.digest);
+    generator.writeEndObject();
+    generator.flush();
+  }
+}
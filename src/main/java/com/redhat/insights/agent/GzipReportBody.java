@@ -0,0 +1,122 @@
+/* Copyright (C) Red Hat 2026 */
+package com.redhat.insights.agent;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.Version;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.redhat.insights.reports.InsightsReport;
+import com.redhat.insights.reports.InsightsSubreport;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.GZIPOutputStream;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.mime.content.AbstractContentBody;
+import org.apache.http.entity.mime.content.ByteArrayBody;
+
+/**
+ * Multipart body that serializes a report straight through a gzip stream into the request, rather
+ * than building the JSON and the compressed bytes up front. The report is serialized again each
+ * time the body is written, so the body can be resent on retry.
+ *
+ * <p>Its length isn't known until it has been written, so a request carrying it is sent chunked.
+ * That is only used with {@code stream_upload=true}; otherwise {@link #toByteArrayBody()} buffers
+ * the compressed report, which still avoids holding the uncompressed JSON.
+ *
+ * <p>The output is the same as gzipping {@link InsightsReport#serializeRaw()}.
+ */
+final class GzipReportBody extends AbstractContentBody {
+  private final InsightsReport report;
+  private final String filename;
+
+  GzipReportBody(InsightsReport report, ContentType contentType, String filename) {
+    super(contentType);
+    this.report = report;
+    this.filename = filename;
+  }
+
+  @Override
+  public void writeTo(OutputStream out) throws IOException {
+    long start = System.nanoTime();
+    // The multipart entity owns the output stream, so only finish the gzip stream, never close it
+    UnclosableOutputStream compressed = new UnclosableOutputStream(out);
+    GZIPOutputStream gzip = new GZIPOutputStream(compressed);
+    mapperFor(report)
+        .writerWithDefaultPrettyPrinter()
+        .without(JsonGenerator.Feature.AUTO_CLOSE_TARGET)
+        .writeValue(gzip, report);
+    gzip.finish();
+    AgentMetrics.getInstance()
+        .recordSerialization(System.nanoTime() - start, compressed.getBytesWritten());
+  }
+
+  /** @return a body holding the compressed report, whose length is known before it is sent */
+  ByteArrayBody toByteArrayBody() throws IOException {
+    ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+    writeTo(compressed);
+    return new ByteArrayBody(compressed.toByteArray(), getContentType(), filename);
+  }
+
+  @Override
+  public String getFilename() {
+    return filename;
+  }
+
+  @Override
+  public String getTransferEncoding() {
+    return "binary";
+  }
+
+  @Override
+  public long getContentLength() {
+    // Unknown until written, so the request is sent chunked
+    return -1;
+  }
+
+  // Mirrors the mapper InsightsReport.serializeRaw() uses, which isn't visible outside the library
+  static ObjectMapper mapperFor(InsightsReport report) {
+    ObjectMapper mapper = new ObjectMapper();
+    mapper.registerModule(new JavaTimeModule());
+    SimpleModule simpleModule =
+        new SimpleModule(
+            "SimpleModule", new Version(1, 0, 0, null, "com.redhat.insights", "runtimes-java"));
+    simpleModule.addSerializer(InsightsReport.class, report.getSerializer());
+    for (InsightsSubreport subreport : report.getSubreports().values()) {
+      simpleModule.addSerializer(subreport.getClass(), subreport.getSerializer());
+    }
+    mapper.registerModule(simpleModule);
+    return mapper;
+  }
+
+  private static final class UnclosableOutputStream extends FilterOutputStream {
+    private long bytesWritten;
+
+    private UnclosableOutputStream(OutputStream out) {
+      super(out);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      out.write(b);
+      bytesWritten++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      out.write(b, off, len);
+      bytesWritten += len;
+    }
+
+    long getBytesWritten() {
+      return bytesWritten;
+    }
+
+    @Override
+    public void close() throws IOException {
+      flush();
+    }
+  }
+}
@@ -0,0 +1,285 @@
+/* Copyright (C) Red Hat 2026 */
+package com.redhat.insights.agent;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalLong;
+
+/**
+ * Read-only view of the performance counters a HotSpot JVM publishes in its hsperfdata file, which
+ * is what {@code jstat} and {@code jps} read. Gives the VM version, arguments, heap sizes and GC
+ * counts of another JVM without attaching to it or running a subprocess. {@link AttachWatcher} uses
+ * it to tell when a new JVM has finished starting up.
+ *
+ * <p>The file is memory-mapped and decoded in one pass. The target keeps updating its counters
+ * while it runs, so each instance is a snapshot of the values at the time it was read.
+ */
+final class HsPerfData {
+  static final int MAGIC = 0xcafec0c0;
+  private static final int SUPPORTED_MAJOR_VERSION = 2;
+  private static final int PROLOGUE_SIZE = 32;
+  private static final int ENTRY_HEADER_SIZE = 20;
+  private static final byte TYPE_LONG = 'J';
+  private static final byte TYPE_BYTE = 'B';
+  private static final byte LITTLE_ENDIAN = 1;
+  // Young and old; a third generation on older JDKs is the permanent generation, not heap
+  private static final int HEAP_GENERATIONS = 2;
+
+  static final String VM_NAME = "java.property.java.vm.name";
+  static final String VM_VERSION = "java.property.java.vm.version";
+  static final String JAVA_VERSION = "java.property.java.version";
+  static final String VM_ARGS = "java.rt.vmArgs";
+  static final String VM_FLAGS = "java.rt.vmFlags";
+  static final String JAVA_COMMAND = "sun.rt.javaCommand";
+  static final String TICK_FREQUENCY = "sun.os.hrt.frequency";
+
+  private final boolean accessible;
+  private final Map<String, Object> counters;
+
+  private HsPerfData(boolean accessible, Map<String, Object> counters) {
+    this.accessible = accessible;
+    this.counters = Collections.unmodifiableMap(counters);
+  }
+
+  /**
+   * @param pid the target JVM, which must be run by the same user as this one
+   * @return the counters of the target
+   * @throws IOException if the target has no hsperfdata file, or it can't be decoded
+   */
+  static HsPerfData read(long pid) throws IOException {
+    return read(AttachWatcher.defaultPerfDataDir().resolve(String.valueOf(pid)));
+  }
+
+  /**
+   * @param file an hsperfdata file
+   * @return the counters in the file
+   * @throws IOException if the file can't be read or isn't a supported hsperfdata file
+   */
+  static HsPerfData read(Path file) throws IOException {
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      // The mapping stays valid after the channel is closed
+      return parse(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+    }
+  }
+
+  static HsPerfData parse(ByteBuffer buffer) throws IOException {
+    if (buffer.limit() < PROLOGUE_SIZE) {
+      throw new IOException("Too short for an hsperfdata file");
+    }
+    // The magic number is always big-endian; the byte order of everything else is in the prologue
+    buffer.order(ByteOrder.BIG_ENDIAN);
+    if (buffer.getInt(0) != MAGIC) {
+      throw new IOException("Not an hsperfdata file");
+    }
+    buffer.order(buffer.get(4) == LITTLE_ENDIAN ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN);
+    int majorVersion = buffer.get(5);
+    if (majorVersion != SUPPORTED_MAJOR_VERSION) {
+      throw new IOException("Unsupported hsperfdata version " + majorVersion);
+    }
+    boolean accessible = buffer.get(7) != 0;
+    int used = Math.min(buffer.getInt(8), buffer.limit());
+    int entryOffset = buffer.getInt(24);
+    int numEntries = buffer.getInt(28);
+
+    // Each entry takes at least a header, so a count that couldn't fit is corrupt
+    if (entryOffset < PROLOGUE_SIZE
+        || entryOffset > used
+        || numEntries < 0
+        || numEntries > (used - entryOffset) / ENTRY_HEADER_SIZE) {
+      throw new IOException(
+          "Corrupt hsperfdata entry count " + numEntries + " at offset " + entryOffset);
+    }
+
+    // Not sized from the count, which comes from the file
+    Map<String, Object> counters = new HashMap<>();
+    int position = entryOffset;
+    for (int i = 0; i < numEntries; i++) {
+      if (position < PROLOGUE_SIZE || position > used - ENTRY_HEADER_SIZE) {
+        throw new IOException("Truncated hsperfdata entry " + i + " at offset " + position);
+      }
+      int entryLength = buffer.getInt(position);
+      int nameOffset = buffer.getInt(position + 4);
+      int vectorLength = buffer.getInt(position + 8);
+      byte dataType = buffer.get(position + 12);
+      int dataOffset = buffer.getInt(position + 16);
+      int end = position + entryLength;
+      // Offsets are relative to the entry, so checking them against its length can't overflow
+      if (entryLength < ENTRY_HEADER_SIZE
+          || end > used
+          || end < position
+          || nameOffset < ENTRY_HEADER_SIZE
+          || nameOffset >= entryLength
+          || dataOffset < ENTRY_HEADER_SIZE
+          || dataOffset > entryLength
+          || vectorLength < 0) {
+        throw new IOException("Corrupt hsperfdata entry " + i + " at offset " + position);
+      }
+
+      String name = readString(buffer, position + nameOffset, end);
+      if (vectorLength == 0 && dataType == TYPE_LONG) {
+        if (dataOffset > entryLength - 8) {
+          throw new IOException("Corrupt hsperfdata entry " + i + " at offset " + position);
+        }
+        counters.put(name, buffer.getLong(position + dataOffset));
+      } else if (vectorLength > 0 && dataType == TYPE_BYTE) {
+        int length = Math.min(vectorLength, entryLength - dataOffset);
+        int start = position + dataOffset;
+        counters.put(name, readString(buffer, start, start + length));
+      }
+      position = end;
+    }
+    return new HsPerfData(accessible, counters);
+  }
+
+  /** Decodes a NUL-terminated string starting at {@code start}, ending at {@code end} at most. */
+  private static String readString(ByteBuffer buffer, int start, int end) throws IOException {
+    if (start < 0 || start > end) {
+      throw new IOException("Corrupt hsperfdata string at offset " + start);
+    }
+    int length = 0;
+    while (start + length < end && buffer.get(start + length) != 0) {
+      length++;
+    }
+    byte[] bytes = new byte[length];
+    for (int i = 0; i < length; i++) {
+      bytes[i] = buffer.get(start + i);
+    }
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  /** @return false if the target hadn't finished setting up its counters when it was read */
+  boolean isAccessible() {
+    return accessible;
+  }
+
+  /** @return every string and long counter, by name */
+  Map<String, Object> getCounters() {
+    return counters;
+  }
+
+  Optional<String> getString(String name) {
+    Object value = counters.get(name);
+    return value instanceof String ? Optional.of((String) value) : Optional.empty();
+  }
+
+  OptionalLong getLong(String name) {
+    Object value = counters.get(name);
+    return value instanceof Long ? OptionalLong.of((Long) value) : OptionalLong.empty();
+  }
+
+  Optional<String> getVmName() {
+    return getString(VM_NAME);
+  }
+
+  Optional<String> getVmVersion() {
+    return getString(VM_VERSION);
+  }
+
+  Optional<String> getJavaVersion() {
+    return getString(JAVA_VERSION);
+  }
+
+  /** @return the JVM options from the command line, e.g. {@code -Xmx1g -Dfoo=bar} */
+  Optional<String> getVmArgs() {
+    return getString(VM_ARGS);
+  }
+
+  /** @return the flags from a {@code .hotspotrc} or {@code -XX:Flags=} file, if any */
+  Optional<String> getVmFlags() {
+    return getString(VM_FLAGS);
+  }
+
+  /** @return the main class or jar, and its arguments */
+  Optional<String> getJavaCommand() {
+    return getString(JAVA_COMMAND);
+  }
+
+  /** @return the bytes currently committed to the heap, or 0 if the collector doesn't say */
+  long getHeapCapacity() {
+    return sumGenerations(".capacity");
+  }
+
+  /** @return the most bytes the heap can grow to, or 0 if the collector doesn't say */
+  long getHeapMaxCapacity() {
+    return sumGenerations(".maxCapacity");
+  }
+
+  /** @return the bytes currently used in the heap, or 0 if the collector doesn't say */
+  long getHeapUsed() {
+    long used = 0;
+    for (int generation = 0; generation < HEAP_GENERATIONS; generation++) {
+      for (int space = 0; ; space++) {
+        OptionalLong value =
+            getLong("sun.gc.generation." + generation + ".space." + space + ".used");
+        if (!value.isPresent()) {
+          break;
+        }
+        used += value.getAsLong();
+      }
+    }
+    return used;
+  }
+
+  private long sumGenerations(String suffix) {
+    long total = 0;
+    for (int generation = 0; generation < HEAP_GENERATIONS; generation++) {
+      total += getLong("sun.gc.generation." + generation + suffix).orElse(0L);
+    }
+    return total;
+  }
+
+  /** @return the target's garbage collectors, in the order the JVM numbers them */
+  List<Collector> getCollectors() {
+    long frequency = getLong(TICK_FREQUENCY).orElse(0L);
+    List<Collector> collectors = new ArrayList<>();
+    for (int i = 0; ; i++) {
+      String prefix = "sun.gc.collector." + i + ".";
+      Optional<String> name = getString(prefix + "name");
+      if (!name.isPresent()) {
+        return collectors;
+      }
+      long ticks = getLong(prefix + "time").orElse(0L);
+      collectors.add(
+          new Collector(
+              name.get(),
+              getLong(prefix + "invocations").orElse(0L),
+              frequency > 0 ? ticks * 1000 / frequency : 0L));
+    }
+  }
+
+  static final class Collector {
+    private final String name;
+    private final long invocations;
+    private final long timeMillis;
+
+    Collector(String name, long invocations, long timeMillis) {
+      this.name = name;
+      this.invocations = invocations;
+      this.timeMillis = timeMillis;
+    }
+
+    String getName() {
+      return name;
+    }
+
+    long getInvocations() {
+      return invocations;
+    }
+
+    /** @return the total time spent in this collector */
+    long getTimeMillis() {
+      return timeMillis;
+    }
+  }
+}
@@ -1,4 +1,4 @@
-/* Copyright (C) Red Hat 2023-2024 */
+/* Copyright (C) Red Hat 2023-2026 */
 package com.redhat.insights.agent;
 
 import static com.redhat.insights.InsightsErrorCode.*;
@@ -6,44 +6,81 @@ import static com.redhat.insights.InsightsErrorCode.*;
 import com.redhat.insights.InsightsException;
 import com.redhat.insights.config.InsightsConfiguration;
 import com.redhat.insights.http.InsightsHttpClient;
-import com.redhat.insights.logging.InsightsLogger;
 import com.redhat.insights.reports.InsightsReport;
+import java.io.Closeable;
 import java.io.IOException;
 import java.net.URI;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Supplier;
 import javax.net.ssl.SSLContext;
+import org.apache.http.HttpEntity;
 import org.apache.http.HttpHost;
 import org.apache.http.ParseException;
 import org.apache.http.client.config.RequestConfig;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpPost;
+import org.apache.http.config.Registry;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
 import org.apache.http.conn.ssl.NoopHostnameVerifier;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
 import org.apache.http.entity.ContentType;
+import org.apache.http.entity.HttpEntityWrapper;
 import org.apache.http.entity.mime.HttpMultipartMode;
 import org.apache.http.entity.mime.MultipartEntityBuilder;
+import org.apache.http.entity.mime.content.ContentBody;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.DefaultHttpRequestRetryHandler;
 import org.apache.http.impl.client.HttpClientBuilder;
 import org.apache.http.impl.client.HttpClients;
 import org.apache.http.impl.conn.DefaultProxyRoutePlanner;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.ssl.SSLContexts;
 import org.apache.http.util.EntityUtils;
 
-public final class InsightsAgentHttpClient implements InsightsHttpClient {
-  private static final InsightsLogger logger = AgentLogger.getLogger();
+public final class InsightsAgentHttpClient implements InsightsHttpClient, Closeable {
+  private static final AgentLogger logger = AgentLogger.getLogger();
   private static final ContentType GENERAL_CONTENT_TYPE = ContentType.create(GENERAL_MIME_TYPE);
+  // Uploads are infrequent and sequential, so a couple of connections is plenty
+  private static final int MAX_CONNECTIONS = 2;
+  private static final long CONNECTION_TTL_MINUTES = 15L;
+  private static final long IDLE_CONNECTION_MINUTES = 10L;
+  private static final int VALIDATE_AFTER_INACTIVITY_MS = 10000;
   private final Supplier<SSLContext> sslContextSupplier;
   private final InsightsConfiguration configuration;
   private final boolean useMTLS;
+  private final boolean streamUpload;
+  private final AcceptedJars acceptedJars;
+  private final AgentMetrics metrics = AgentMetrics.getInstance();
+
+  // Guarded by this
+  private CloseableHttpClient client;
+  private String clientSettings;
+  private boolean shutdownHookAdded = false;
 
   public InsightsAgentHttpClient(
       InsightsConfiguration configuration, Supplier<SSLContext> sslContextSupplier) {
     this.configuration = configuration;
     this.sslContextSupplier = sslContextSupplier;
     this.useMTLS = !configuration.getMaybeAuthToken().isPresent();
+    this.streamUpload = isStreamUpload(configuration);
+    this.acceptedJars = new AcceptedJars();
   }
 
   public InsightsAgentHttpClient(InsightsConfiguration configuration) {
+    this(configuration, new AcceptedJars());
+  }
+
+  /**
+   * @param configuration the agent configuration
+   * @param acceptedJars updated with the jars in each report the server accepts
+   */
+  InsightsAgentHttpClient(InsightsConfiguration configuration, AcceptedJars acceptedJars) {
     this.configuration = configuration;
     this.sslContextSupplier =
         () -> {
@@ -51,6 +88,13 @@ public final class InsightsAgentHttpClient implements InsightsHttpClient {
               ERROR_SSL_CREATING_CONTEXT, "Could not create SSL context in Token Auth mode");
         };
     this.useMTLS = false;
+    this.streamUpload = isStreamUpload(configuration);
+    this.acceptedJars = acceptedJars;
+  }
+
+  private static boolean isStreamUpload(InsightsConfiguration configuration) {
+    return configuration instanceof AgentConfiguration
+        && ((AgentConfiguration) configuration).isStreamUpload();
   }
 
   @Override
@@ -70,38 +114,32 @@ public final class InsightsAgentHttpClient implements InsightsHttpClient {
   @Override
   public void sendInsightsReport(String filename, InsightsReport report) {
     decorate(report);
-    byte[] json = report.serializeRaw();
-    logger.debug("Red Hat Insights Report:\n" + new String(json, StandardCharsets.UTF_8));
-    sendCompressedInsightsReport(filename, InsightsHttpClient.gzipReport(json));
-  }
-
-  void sendCompressedInsightsReport(String filename, byte[] bytes) {
-    HttpClientBuilder clientBuilder = HttpClients.custom();
-    // Do Timeouts first, as we set them in the default request config
-    int delay = (int) configuration.getHttpClientTimeout().toMillis();
-    RequestConfig requestConfig =
-        RequestConfig.custom()
-            .setConnectionRequestTimeout(delay)
-            .setConnectTimeout(delay)
-            .setSocketTimeout(delay)
-            .build();
-    clientBuilder.setDefaultRequestConfig(requestConfig);
-    if (configuration.getProxyConfiguration().isPresent()) {
-      InsightsConfiguration.ProxyConfiguration conf = configuration.getProxyConfiguration().get();
-      clientBuilder.setRoutePlanner(
-          new DefaultProxyRoutePlanner(new HttpHost(conf.getHost(), conf.getPort(), "http")));
-    }
-    clientBuilder.setRetryHandler(
-        new DefaultHttpRequestRetryHandler(configuration.getHttpClientRetryMaxAttempts(), true));
-    if (useMTLS) {
-      if (sslContextSupplier.get() == null) {
+    logger.debug(
+        () ->
+            "Red Hat Insights Report:\n"
+                + new String(report.serializeRaw(), StandardCharsets.UTF_8));
+    GzipReportBody body = new GzipReportBody(report, GENERAL_CONTENT_TYPE, filename);
+    ContentBody toSend = body;
+    if (!streamUpload) {
+      try {
+        toSend = body.toByteArrayBody();
+      } catch (IOException e) {
+        logger.debug("Error", e);
         return;
       }
-      clientBuilder.setSSLContext(sslContextSupplier.get());
-    } else {
-      clientBuilder.setSSLHostnameVerifier(NoopHostnameVerifier.INSTANCE);
     }
-    try (CloseableHttpClient client = clientBuilder.build()) {
+    if (sendCompressedInsightsReport(filename, toSend)) {
+      acceptedJars.accepted(report);
+    }
+  }
+
+  /** @return true if the server accepted the report */
+  boolean sendCompressedInsightsReport(String filename, ContentBody body) {
+    CloseableHttpClient httpClient = getClient();
+    if (httpClient == null) {
+      return false;
+    }
+    try {
       HttpPost post;
       if (useMTLS) {
         post = createPost();
@@ -111,24 +149,33 @@ public final class InsightsAgentHttpClient implements InsightsHttpClient {
       post.setHeader("Cache-Control", "no-store");
       MultipartEntityBuilder builder = MultipartEntityBuilder.create();
       builder.setMode(HttpMultipartMode.BROWSER_COMPATIBLE);
-      builder.addBinaryBody("file", bytes, GENERAL_CONTENT_TYPE, filename);
+      builder.addPart("file", body);
       builder.addTextBody("type", GENERAL_MIME_TYPE);
-      post.setEntity(builder.build());
-      try (CloseableHttpResponse response = client.execute(post)) {
-        logger.debug(
-            "Red Hat Insights HTTP Client: status="
-                + response.getStatusLine()
-                + ", body="
-                + EntityUtils.toString(response.getEntity(), StandardCharsets.UTF_8));
+      HttpEntity entity = builder.build();
+      // Only a streamed report body is known to be safe to write again
+      post.setEntity(body instanceof GzipReportBody ? new RepeatableEntity(entity) : entity);
+      long start = System.nanoTime();
+      try (CloseableHttpResponse response = execute(httpClient, post, start)) {
+        if (logger.isDebugEnabled()) {
+          logger.debug(
+              "Red Hat Insights HTTP Client: status="
+                  + response.getStatusLine()
+                  + ", body="
+                  + EntityUtils.toString(response.getEntity(), StandardCharsets.UTF_8));
+        } else {
+          // Still read the body, so the connection can go back to the pool
+          EntityUtils.consume(response.getEntity());
+        }
+        metrics.recordHttpSend(System.nanoTime() - start, response.getStatusLine().getStatusCode());
         switch (response.getStatusLine().getStatusCode()) {
           case 201:
             logger.debug(
                 "Red Hat Insights - Advisor content type with no metadata accepted for"
                     + " processing");
-            break;
+            return true;
           case 202:
             logger.debug("Red Hat Insights - Payload was accepted for processing");
-            break;
+            return true;
           case 401:
             throw new InsightsException(
                 ERROR_HTTP_SEND_AUTH_ERROR, response.getStatusLine().getReasonPhrase());
@@ -148,6 +195,146 @@ public final class InsightsAgentHttpClient implements InsightsHttpClient {
     } catch (IOException | ParseException ioex) {
       logger.debug("Error", ioex);
     }
+    return false;
+  }
+
+  private CloseableHttpResponse execute(CloseableHttpClient httpClient, HttpPost post, long start)
+      throws IOException {
+    try {
+      return httpClient.execute(post);
+    } catch (IOException | RuntimeException e) {
+      metrics.recordHttpFailure(System.nanoTime() - start);
+      throw e;
+    }
+  }
+
+  /**
+   * Returns the long-lived client, building it on first use and rebuilding it if the connection
+   * settings or the key and certificate files have changed since it was built. The SSL context is
+   * only asked for when a client is built, as a supplier may create a new one on every call.
+   *
+   * @return the client, or null if mTLS is in use and no SSL context is available yet
+   */
+  synchronized CloseableHttpClient getClient() {
+    String settings = describeConnectionSettings();
+    if (client != null && settings.equals(clientSettings)) {
+      return client;
+    }
+    SSLContext sslContext = null;
+    if (useMTLS) {
+      sslContext = sslContextSupplier.get();
+      if (sslContext == null) {
+        return null;
+      }
+    }
+    closeClient();
+    client = buildClient(sslContext);
+    clientSettings = settings;
+    if (!shutdownHookAdded) {
+      Runtime.getRuntime().addShutdownHook(new Thread(this::close, "insights-http-client-closer"));
+      shutdownHookAdded = true;
+    }
+    return client;
+  }
+
+  private CloseableHttpClient buildClient(SSLContext sslContext) {
+    SSLConnectionSocketFactory sslSocketFactory;
+    if (useMTLS) {
+      sslSocketFactory =
+          new SSLConnectionSocketFactory(
+              sslContext, SSLConnectionSocketFactory.getDefaultHostnameVerifier());
+    } else {
+      sslSocketFactory =
+          new SSLConnectionSocketFactory(
+              SSLContexts.createDefault(), NoopHostnameVerifier.INSTANCE);
+    }
+    Registry<ConnectionSocketFactory> registry =
+        RegistryBuilder.<ConnectionSocketFactory>create()
+            .register("http", PlainConnectionSocketFactory.getSocketFactory())
+            .register("https", sslSocketFactory)
+            .build();
+    PoolingHttpClientConnectionManager connectionManager =
+        new PoolingHttpClientConnectionManager(
+            registry, null, null, null, CONNECTION_TTL_MINUTES, TimeUnit.MINUTES);
+    connectionManager.setMaxTotal(MAX_CONNECTIONS);
+    connectionManager.setDefaultMaxPerRoute(MAX_CONNECTIONS);
+    connectionManager.setValidateAfterInactivity(VALIDATE_AFTER_INACTIVITY_MS);
+
+    HttpClientBuilder clientBuilder =
+        HttpClients.custom()
+            .setConnectionManager(connectionManager)
+            // Every request uses the same identity, so any pooled connection can be reused
+            .disableConnectionState()
+            .evictIdleConnections(IDLE_CONNECTION_MINUTES, TimeUnit.MINUTES);
+    // Do Timeouts first, as we set them in the default request config
+    int delay = (int) configuration.getHttpClientTimeout().toMillis();
+    RequestConfig requestConfig =
+        RequestConfig.custom()
+            .setConnectionRequestTimeout(delay)
+            .setConnectTimeout(delay)
+            .setSocketTimeout(delay)
+            .build();
+    clientBuilder.setDefaultRequestConfig(requestConfig);
+    if (configuration.getProxyConfiguration().isPresent()) {
+      InsightsConfiguration.ProxyConfiguration conf = configuration.getProxyConfiguration().get();
+      clientBuilder.setRoutePlanner(
+          new DefaultProxyRoutePlanner(new HttpHost(conf.getHost(), conf.getPort(), "http")));
+    }
+    clientBuilder.setRetryHandler(
+        new DefaultHttpRequestRetryHandler(configuration.getHttpClientRetryMaxAttempts(), true));
+    return clientBuilder.build();
+  }
+
+  private String describeConnectionSettings() {
+    String proxy =
+        configuration
+            .getProxyConfiguration()
+            .map(conf -> conf.getHost() + ":" + conf.getPort())
+            .orElse("");
+    String settings =
+        configuration.getHttpClientTimeout()
+            + "|"
+            + configuration.getHttpClientRetryMaxAttempts()
+            + "|"
+            + proxy;
+    if (useMTLS) {
+      // A renewed certificate is written over the old one, so its timestamp tells us to reload
+      settings +=
+          "|"
+              + describeFile(configuration.getCertFilePath())
+              + "|"
+              + describeFile(configuration.getKeyFilePath());
+    }
+    return settings;
+  }
+
+  private static String describeFile(String path) {
+    if (path == null || path.isEmpty()) {
+      return "";
+    }
+    try {
+      return path + "@" + Files.getLastModifiedTime(Paths.get(path)).toMillis();
+    } catch (IOException | InvalidPathException __) {
+      return path;
+    }
+  }
+
+  /** Closes the pooled client and its connections. A later send builds a new one. */
+  @Override
+  public synchronized void close() {
+    closeClient();
+  }
+
+  private void closeClient() {
+    if (client != null) {
+      try {
+        client.close();
+      } catch (IOException e) {
+        logger.debug("Error closing HTTP client", e);
+      }
+      client = null;
+      clientSettings = null;
+    }
   }
 
   HttpPost createAuthTokenPost() {
@@ -199,4 +386,20 @@ public final class InsightsAgentHttpClient implements InsightsHttpClient {
         + assembleURI(configuration.getUploadBaseURL(), configuration.getUploadUri())
         + '}';
   }
+
+  /**
+   * A streamed multipart entity has no length, so reports itself as not repeatable, which would
+   * stop the retry handler resending it. Our bodies re-serialize the report on every write, so they
+   * are.
+   */
+  private static final class RepeatableEntity extends HttpEntityWrapper {
+    private RepeatableEntity(HttpEntity wrapped) {
+      super(wrapped);
+    }
+
+    @Override
+    public boolean isRepeatable() {
+      return true;
+    }
+  }
 }
@@ -0,0 +1,189 @@
+/* Copyright (C) Red Hat 2026 */
+package com.redhat.insights.agent;
+
+import static java.lang.System.getProperty;
+
+import com.redhat.insights.logging.InsightsLogger;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.security.AccessController;
+import java.security.PrivilegedAction;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * Identifies the JBoss EAP / WildFly version without blocking report generation.
+ *
+ * <p>The product version can only be read safely once JBoss Modules has initialized, which we can't
+ * wait for on the reporting thread. Instead, identification runs on a short-lived background thread
+ * whenever there is a sign the server may be ready: the {@link ClassNoticer} seeing the module
+ * loader or {@code ProductConfig} being loaded, or a report asking for the workload. If the server
+ * isn't ready yet, the attempt does nothing and the next sign tries again.
+ */
+final class JBossFingerprint {
+  private static final InsightsLogger logger = AgentLogger.getLogger();
+
+  static final String MODULE_LOADER_CLASS = "org.jboss.modules.ModuleLoader";
+  static final String PRODUCT_CONFIG_CLASS = "org.jboss.as.version.ProductConfig";
+
+  /** Reported until identification has finished. */
+  static final String PENDING = "JBoss EAP / WildFly";
+
+  static final String MISCONFIGURED = "Unknown EAP / Wildfly - possibly misconfigured";
+
+  private static final Class<?>[] EMPTY_CLASS_ARRAY = new Class[0];
+  private static final Object[] EMPTY_OBJECT_ARRAY = new Object[0];
+
+  private static final JBossFingerprint INSTANCE = new JBossFingerprint();
+
+  private final AtomicBoolean running = new AtomicBoolean(false);
+  private final List<Consumer<String>> listeners = new CopyOnWriteArrayList<>();
+  private volatile String workload = null;
+
+  private JBossFingerprint() {}
+
+  static JBossFingerprint getInstance() {
+    return INSTANCE;
+  }
+
+  /** Starts identification as soon as the JBoss classes that signal readiness are loaded. */
+  void watch(ClassArrivalWatcher watcher) {
+    watcher.watch(MODULE_LOADER_CLASS, __ -> start());
+    watcher.watch(PRODUCT_CONFIG_CLASS, __ -> start());
+  }
+
+  /**
+   * @return the identified workload, or {@link #PENDING} if identification hasn't finished yet, in
+   *     which case an attempt is started
+   */
+  String getWorkload() {
+    String current = workload;
+    if (current == null) {
+      start();
+      return PENDING;
+    }
+    return current;
+  }
+
+  /**
+   * @param listener called once with the identified workload; immediately, if it is already known
+   */
+  void whenIdentified(Consumer<String> listener) {
+    listeners.add(listener);
+    String current = workload;
+    if (current != null && listeners.remove(listener)) {
+      listener.accept(current);
+    }
+  }
+
+  private void start() {
+    if (workload != null || !running.compareAndSet(false, true)) {
+      return;
+    }
+    Thread thread = new Thread(this::attempt, "insights-jboss-fingerprint");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  private void attempt() {
+    try {
+      // Wait until JBoss Modules initializes to avoid breaking their module loader
+      String modulePath = getPropertyPrivileged("module.path", null);
+      String home = getPropertyPrivileged("jboss.home.dir", null);
+      if (modulePath == null || home == null) {
+        logger.debug("JBoss Modules not initialized yet, will retry JBoss probe later");
+        return;
+      }
+      identified(probe(home));
+    } finally {
+      running.set(false);
+    }
+  }
+
+  private void identified(String result) {
+    workload = result;
+    for (Consumer<String> listener : listeners) {
+      if (listeners.remove(listener)) {
+        listener.accept(result);
+      }
+    }
+  }
+
+  static String probe(String home) {
+    try {
+      Method getBootModuleLoaderMethod =
+          getModuleClass().getDeclaredMethod("getBootModuleLoader", EMPTY_CLASS_ARRAY);
+      Object moduleLoader = getBootModuleLoaderMethod.invoke(null, EMPTY_OBJECT_ARRAY);
+      ClassLoader versionModuleClassLoader =
+          getModuleClassLoader(moduleLoader, "org.jboss.as.version");
+      Class<?> moduleLoaderClass = getJBossModuleLoaderClass(moduleLoader.getClass());
+      Class<?> productConfigClass = versionModuleClassLoader.loadClass(PRODUCT_CONFIG_CLASS);
+      Method fromFilesystemSlotMethod =
+          productConfigClass.getDeclaredMethod(
+              "fromFilesystemSlot", moduleLoaderClass, String.class, Map.class);
+      Object productConfig =
+          fromFilesystemSlotMethod.invoke(
+              null, moduleLoaderClass.cast(moduleLoader), home, getPropertiesPrivileged());
+      return (String)
+          productConfigClass
+              .getDeclaredMethod("getPrettyVersionString", EMPTY_CLASS_ARRAY)
+              .invoke(productConfig, EMPTY_OBJECT_ARRAY);
+    } catch (Exception ex) {
+      logger.debug("Ignoring exception during JBoss probe", ex);
+    }
+    return MISCONFIGURED;
+  }
+
+  static Class<?> getModuleClass() throws ClassNotFoundException {
+    return JBossFingerprint.class.getClassLoader().loadClass("org.jboss.modules.Module");
+  }
+
+  static ClassLoader getModuleClassLoader(Object moduleLoader, String moduleName)
+      throws ClassNotFoundException, NoSuchMethodException, IllegalAccessException,
+          IllegalArgumentException, InvocationTargetException {
+    Method getClassLoaderMethod =
+        getModuleClass().getDeclaredMethod("getClassLoader", EMPTY_CLASS_ARRAY);
+    return (ClassLoader)
+        getClassLoaderMethod.invoke(loadModule(moduleLoader, moduleName), EMPTY_OBJECT_ARRAY);
+  }
+
+  static Object loadModule(Object moduleLoader, String moduleName)
+      throws ClassNotFoundException, NoSuchMethodException, IllegalAccessException,
+          IllegalArgumentException, InvocationTargetException {
+    Method loadModuleMethod = moduleLoader.getClass().getMethod("loadModule", String.class);
+    return loadModuleMethod.invoke(moduleLoader, moduleName);
+  }
+
+  static Class<?> getJBossModuleLoaderClass(Class<?> subModuleLoaderClass) {
+    if (MODULE_LOADER_CLASS.equals(subModuleLoaderClass.getName())) {
+      return subModuleLoaderClass;
+    }
+    if ("java.lang.Object".equals(subModuleLoaderClass.getName())) {
+      throw new IllegalArgumentException(
+          subModuleLoaderClass + " is not a subclass of " + MODULE_LOADER_CLASS);
+    }
+    return getJBossModuleLoaderClass(subModuleLoaderClass.getSuperclass());
+  }
+
+  private static String getPropertyPrivileged(final String property, final String defaultValue) {
+    if (System.getSecurityManager() != null) {
+      return AccessController.doPrivileged(
+          (PrivilegedAction<String>) () -> System.getProperty(property, defaultValue));
+    }
+
+    return getProperty(property, defaultValue);
+  }
+
+  private static Properties getPropertiesPrivileged() {
+    if (System.getSecurityManager() != null) {
+      return AccessController.doPrivileged(
+          (PrivilegedAction<Properties>) () -> System.getProperties());
+    }
+
+    return System.getProperties();
+  }
+}
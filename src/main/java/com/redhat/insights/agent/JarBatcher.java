@@ -0,0 +1,78 @@
+/* Copyright (C) Red Hat 2026 */
+package com.redhat.insights.agent;
+
+import com.redhat.insights.jars.JarInfo;
+import com.redhat.insights.logging.InsightsLogger;
+import java.time.Duration;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hands jar updates to the report controller one batch at a time, when {@code jar_batch_size} or
+ * {@code jar_batch_linger_secs} is set.
+ *
+ * <p>The controller sends whatever is in the queue it is given on every update period. With
+ * batching on, it is given the outbox of this batcher rather than the {@link BoundedJarQueue} the
+ * noticer fills. A batch is moved to the outbox as soon as the jar that fills it is queued, or once
+ * the oldest waiting jar has lingered, and only when the previous batch has been taken. The update
+ * period is shortened to the check interval (see {@link AgentConfiguration#getUpdatePeriod()}), so
+ * a batch is sent soon after it is handed over.
+ */
+final class JarBatcher {
+  private static final InsightsLogger logger = AgentLogger.getLogger();
+
+  private final BoundedJarQueue waiting;
+  private final BlockingQueue<JarInfo> outbox = new LinkedBlockingQueue<>();
+  private final Duration checkInterval;
+  private final ScheduledExecutorService executor =
+      Executors.newSingleThreadScheduledExecutor(
+          r -> {
+            Thread t = new Thread(r, "insights-jar-batcher");
+            t.setDaemon(true);
+            return t;
+          });
+
+  /**
+   * @param waiting the queue the noticer adds analyzed jars to
+   * @param checkInterval how often to check for a lingering batch, or one left behind because the
+   *     outbox was still full
+   */
+  JarBatcher(BoundedJarQueue waiting, Duration checkInterval) {
+    this.waiting = waiting;
+    this.checkInterval = checkInterval;
+  }
+
+  void start() {
+    waiting.setBatchListener(() -> executor.execute(this::flush));
+    long millis = checkInterval.toMillis();
+    executor.scheduleWithFixedDelay(this::flush, millis, millis, TimeUnit.MILLISECONDS);
+  }
+
+  /** @return the queue for the report controller to send from */
+  BlockingQueue<JarInfo> getOutbox() {
+    return outbox;
+  }
+
+  /**
+   * Moves the next batch to the outbox, if it is ready and the last one has been sent.
+   *
+   * @return true if a batch was moved
+   */
+  synchronized boolean flush() {
+    try {
+      if (!outbox.isEmpty() || !waiting.isBatchReady()) {
+        return false;
+      }
+      int count = waiting.drainBatch(outbox);
+      logger.debug("Handing a batch of " + count + " jars over to be sent");
+      return count > 0;
+    } catch (RuntimeException e) {
+      // Don't let one failure stop the scheduled checks
+      logger.warning("Unable to batch jars for sending", e);
+      return false;
+    }
+  }
+}
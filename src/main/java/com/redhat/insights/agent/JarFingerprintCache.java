@@ -0,0 +1,222 @@
+/* Copyright (C) Red Hat 2026 */
+package com.redhat.insights.agent;
+
+import com.redhat.insights.jars.JarInfo;
+import com.redhat.insights.logging.InsightsLogger;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A persistent cache of {@link JarInfo} results, so that jars which haven't changed since a
+ * previous run don't have to be opened and hashed again.
+ *
+ * <p>Entries are keyed by the canonical path of the jar (plus the nested path, for jars inside
+ * other archives) and are only valid while the backing file's size and last-modified time match the
+ * ones recorded. The cache lives in a single compact binary file, which is read once at startup and
+ * rewritten atomically by {@link #save()}.
+ */
+final class JarFingerprintCache {
+  private static final InsightsLogger logger = AgentLogger.getLogger();
+
+  static final String CACHE_FILE_NAME = "jar-fingerprints.bin";
+
+  private static final int MAGIC = 0x494a4643; // "IJFC"
+  private static final int FORMAT_VERSION = 1;
+  static final int MAX_ENTRIES = 16384;
+  // The most bytes writeUTF() can write for one string
+  private static final int MAX_UTF_LENGTH = 65535;
+
+  private final Path file;
+  private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+  private final AtomicBoolean dirty = new AtomicBoolean(false);
+
+  private JarFingerprintCache(Path file) {
+    this.file = file;
+  }
+
+  /**
+   * Opens the cache stored in the given directory, starting empty if there is no usable cache file
+   * there yet.
+   *
+   * @param directory the directory holding the cache file
+   * @return the cache
+   */
+  static JarFingerprintCache load(Path directory) {
+    JarFingerprintCache cache = new JarFingerprintCache(directory.resolve(CACHE_FILE_NAME));
+    try (DataInputStream in =
+        new DataInputStream(new BufferedInputStream(Files.newInputStream(cache.file)))) {
+      cache.read(in);
+      logger.debug("Loaded " + cache.entries.size() + " jar fingerprints from " + cache.file);
+    } catch (NoSuchFileException __) {
+      // First run, nothing to load
+    } catch (IOException | RuntimeException e) {
+      logger.warning("Ignoring unreadable jar fingerprint cache " + cache.file, e);
+      cache.entries.clear();
+    }
+    return cache;
+  }
+
+  /**
+   * @param key the canonical location of the jar
+   * @param size the current size of the backing file
+   * @param lastModified the current last-modified time of the backing file
+   * @return the cached info, if present and the backing file hasn't changed
+   */
+  Optional<JarInfo> get(String key, long size, long lastModified) {
+    Entry entry = entries.get(key);
+    if (entry == null || entry.size != size || entry.lastModified != lastModified) {
+      return Optional.empty();
+    }
+    return Optional.of(entry.jarInfo);
+  }
+
+  void put(String key, long size, long lastModified, JarInfo jarInfo) {
+    if (!isStorable(key, jarInfo) || (entries.size() >= MAX_ENTRIES && !entries.containsKey(key))) {
+      return;
+    }
+    entries.put(key, new Entry(size, lastModified, jarInfo));
+    dirty.set(true);
+  }
+
+  int size() {
+    return entries.size();
+  }
+
+  /**
+   * Writes the cache back to disk, if anything has been added since it was loaded or last saved
+   * successfully.
+   */
+  void save() {
+    // Cleared before writing, so that entries put while we write are saved next time
+    if (!dirty.compareAndSet(true, false)) {
+      return;
+    }
+    boolean saved = false;
+    try {
+      Files.createDirectories(file.getParent());
+      Path tmp = Files.createTempFile(file.getParent(), CACHE_FILE_NAME, ".tmp");
+      try {
+        try (DataOutputStream out =
+            new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+          write(out);
+        }
+        try {
+          Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException __) {
+          Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+      } finally {
+        Files.deleteIfExists(tmp);
+      }
+      saved = true;
+      logger.debug("Saved " + entries.size() + " jar fingerprints to " + file);
+    } catch (IOException e) {
+      logger.warning("Unable to save jar fingerprint cache " + file, e);
+    } finally {
+      if (!saved) {
+        // Try again on the next save
+        dirty.set(true);
+      }
+    }
+  }
+
+  /**
+   * @return whether every string in the entry can be written with {@code writeUTF()}, so that one
+   *     oversized manifest value can't stop the whole cache from being saved
+   */
+  private static boolean isStorable(String key, JarInfo jarInfo) {
+    if (!isWritable(key) || !isWritable(jarInfo.name()) || !isWritable(jarInfo.version())) {
+      return false;
+    }
+    for (Map.Entry<String, String> attribute : jarInfo.attributes().entrySet()) {
+      if (!isWritable(attribute.getKey()) || !isWritable(attribute.getValue())) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static boolean isWritable(String s) {
+    if (s == null) {
+      return false;
+    }
+    // Quick check: no string this short can be too long once encoded
+    if (s.length() * 3 <= MAX_UTF_LENGTH) {
+      return true;
+    }
+    // Modified UTF-8 takes one byte for 0x01-0x7f, two for NUL and up to 0x7ff, three above that
+    long length = 0;
+    for (int i = 0; i < s.length(); i++) {
+      char c = s.charAt(i);
+      length += (c >= 0x0001 && c <= 0x007f) ? 1 : (c <= 0x07ff ? 2 : 3);
+    }
+    return length <= MAX_UTF_LENGTH;
+  }
+
+  private void read(DataInputStream in) throws IOException {
+    if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+      throw new IOException("Not a jar fingerprint cache, or an unsupported version");
+    }
+    int count = Math.min(in.readInt(), MAX_ENTRIES);
+    for (int i = 0; i < count; i++) {
+      String key = in.readUTF();
+      long size = in.readLong();
+      long lastModified = in.readLong();
+      String name = in.readUTF();
+      String version = in.readUTF();
+      int attributeCount = in.readInt();
+      Map<String, String> attributes = new HashMap<>();
+      for (int j = 0; j < attributeCount; j++) {
+        attributes.put(in.readUTF(), in.readUTF());
+      }
+      entries.put(key, new Entry(size, lastModified, new JarInfo(name, version, attributes)));
+    }
+  }
+
+  private void write(DataOutputStream out) throws IOException {
+    // Take a copy, so the count we write matches the entries that follow
+    Map<String, Entry> snapshot = new HashMap<>(entries);
+    out.writeInt(MAGIC);
+    out.writeInt(FORMAT_VERSION);
+    out.writeInt(snapshot.size());
+    for (Map.Entry<String, Entry> e : snapshot.entrySet()) {
+      Entry entry = e.getValue();
+      out.writeUTF(e.getKey());
+      out.writeLong(entry.size);
+      out.writeLong(entry.lastModified);
+      out.writeUTF(entry.jarInfo.name());
+      out.writeUTF(entry.jarInfo.version());
+      Map<String, String> attributes = entry.jarInfo.attributes();
+      out.writeInt(attributes.size());
+      for (Map.Entry<String, String> attribute : attributes.entrySet()) {
+        out.writeUTF(attribute.getKey());
+        out.writeUTF(attribute.getValue());
+      }
+    }
+  }
+
+  private static final class Entry {
+    private final long size;
+    private final long lastModified;
+    private final JarInfo jarInfo;
+
+    private Entry(long size, long lastModified, JarInfo jarInfo) {
+      this.size = size;
+      this.lastModified = lastModified;
+      this.jarInfo = jarInfo;
+    }
+  }
+}
@@ -0,0 +1,65 @@
+/* Copyright (C) Red Hat 2026 */
+package com.redhat.insights.agent;
+
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.redhat.insights.jars.JarInfo;
+import com.redhat.insights.jars.JarInfoSubreport;
+import com.redhat.insights.logging.InsightsLogger;
+import com.redhat.insights.reports.InsightsSubreport;
+import java.util.Collection;
+
+/**
+ * Wraps a jars subreport so that it is only generated once per report cycle, however many
+ * subreports ask for it. The "jars" and "details" subreports share one of these, and {@link
+ * AgentBasicReport} calls {@link #reset()} at the start of each cycle.
+ */
+final class MemoizedJarInfoSubreport extends JarInfoSubreport {
+  private final JarInfoSubreport delegate;
+  private final boolean compact;
+
+  // Guarded by this
+  private boolean generated = false;
+
+  MemoizedJarInfoSubreport(InsightsLogger logger, JarInfoSubreport delegate) {
+    this(logger, delegate, false);
+  }
+
+  /** @param compact whether to serialize with the compact encoding */
+  MemoizedJarInfoSubreport(InsightsLogger logger, JarInfoSubreport delegate, boolean compact) {
+    super(logger);
+    this.delegate = delegate;
+    this.compact = compact;
+  }
+
+  /**
+   * Generates the wrapped subreport, unless that has already happened this cycle. Concurrent
+   * callers wait for the first one to finish rather than generating it again.
+   */
+  @Override
+  public synchronized void generateReport() {
+    if (!generated) {
+      delegate.generateReport();
+      generated = true;
+    }
+  }
+
+  /** Starts a new report cycle, so the next {@link #generateReport()} regenerates. */
+  synchronized void reset() {
+    generated = false;
+  }
+
+  @Override
+  public Collection<JarInfo> getJarInfos() {
+    return delegate.getJarInfos();
+  }
+
+  @Override
+  public String getVersion() {
+    return delegate.getVersion();
+  }
+
+  @Override
+  public JsonSerializer<InsightsSubreport> getSerializer() {
+    return compact ? new CompactJarInfoSubreportSerializer() : super.getSerializer();
+  }
+}
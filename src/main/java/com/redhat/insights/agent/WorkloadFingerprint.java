@@ -0,0 +1,33 @@
+/* Copyright (C) Red Hat 2026 */
+package com.redhat.insights.agent;
+
+/**
+ * Identifies a kind of workload from the presence of a class. Implementations other than the
+ * built-in ones can be added through {@link java.util.ServiceLoader}, by listing them in {@code
+ * META-INF/services/com.redhat.insights.agent.WorkloadFingerprint} on the agent's classpath.
+ */
+public interface WorkloadFingerprint {
+
+  /**
+   * Priority of fingerprints that don't override {@link #getPriority()}, such as most added
+   * through {@link java.util.ServiceLoader}. The built-in fingerprints use 10 to 40, so are
+   * checked first.
+   */
+  int DEFAULT_PRIORITY = 100;
+
+  /** @return the binary name of the class whose presence indicates this workload */
+  String getProbeClassName();
+
+  /** @return the order in which this fingerprint is checked and reported, lowest first */
+  default int getPriority() {
+    return DEFAULT_PRIORITY;
+  }
+
+  /**
+   * Names the workload. This is called on the reporting thread, so must not block.
+   *
+   * @param probeClass the probe class, which has been found
+   * @return the workload, e.g. "Spring Boot"
+   */
+  String identify(Class<?> probeClass);
+}
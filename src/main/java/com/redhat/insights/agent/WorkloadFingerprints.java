@@ -0,0 +1,185 @@
+/* Copyright (C) Red Hat 2026 */
+package com.redhat.insights.agent;
+
+import com.redhat.insights.logging.InsightsLogger;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * The ordered set of {@link WorkloadFingerprint}s: the built-in ones, plus any found through {@link
+ * ServiceLoader}. Fingerprints are checked in priority order, and every match is reported.
+ *
+ * <p>Probe classes that the {@link ClassNoticer} has already seen load are resolved from their
+ * defining loader. Other probes are first checked with {@link ClassPresence}, so a missing probe
+ * class is never looked up with {@link Class#forName(String)}.
+ */
+final class WorkloadFingerprints {
+  private static final InsightsLogger logger = AgentLogger.getLogger();
+
+  private static final Comparator<WorkloadFingerprint> ORDER =
+      Comparator.comparingInt(WorkloadFingerprint::getPriority)
+          .thenComparing(WorkloadFingerprint::getProbeClassName);
+
+  private static WorkloadFingerprints instance;
+
+  private final List<WorkloadFingerprint> fingerprints;
+  private final ClassArrivalWatcher watcher;
+  private final ClassPresence presence;
+
+  WorkloadFingerprints(List<WorkloadFingerprint> fingerprints, ClassArrivalWatcher watcher) {
+    this(fingerprints, watcher, ClassPresence.getInstance());
+  }
+
+  WorkloadFingerprints(
+      List<WorkloadFingerprint> fingerprints, ClassArrivalWatcher watcher, ClassPresence presence) {
+    List<WorkloadFingerprint> sorted = new ArrayList<>(fingerprints);
+    sorted.sort(ORDER);
+    this.fingerprints = Collections.unmodifiableList(sorted);
+    this.watcher = watcher;
+    this.presence = presence;
+  }
+
+  static synchronized WorkloadFingerprints getInstance() {
+    if (instance == null) {
+      List<WorkloadFingerprint> all = builtIn();
+      all.addAll(discover());
+      instance = new WorkloadFingerprints(all, ClassArrivalWatcher.getInstance());
+    }
+    return instance;
+  }
+
+  static List<WorkloadFingerprint> builtIn() {
+    List<WorkloadFingerprint> out = new ArrayList<>();
+    out.add(of("org.jboss.modules.Module", 10, AgentSubreport::fingerprintJBoss));
+    out.add(
+        of(
+            "io.quarkus.bootstrap.runner.QuarkusEntryPoint",
+            20,
+            AgentSubreport::fingerprintQuarkus));
+    out.add(of("org.apache.catalina.startup.Bootstrap", 30, AgentSubreport::fingerprintTomcat));
+    out.add(of("org.springframework.boot.SpringApplication", 40, __ -> "Spring Boot"));
+    out.add(of("org.springframework.boot.loader.Launcher", 40, __ -> "Spring Boot"));
+    // Since SB 3.2
+    out.add(of("org.springframework.boot.loader.launch.Launcher", 40, __ -> "Spring Boot"));
+    return out;
+  }
+
+  private static List<WorkloadFingerprint> discover() {
+    List<WorkloadFingerprint> out = new ArrayList<>();
+    Iterator<WorkloadFingerprint> it =
+        ServiceLoader.load(WorkloadFingerprint.class, WorkloadFingerprint.class.getClassLoader())
+            .iterator();
+    while (true) {
+      try {
+        if (!it.hasNext()) {
+          break;
+        }
+        WorkloadFingerprint fingerprint = it.next();
+        logger.debug("Found workload fingerprint " + fingerprint.getClass().getName());
+        out.add(fingerprint);
+      } catch (ServiceConfigurationError e) {
+        logger.warning("Ignoring workload fingerprint that could not be loaded", e);
+      }
+    }
+    return out;
+  }
+
+  List<WorkloadFingerprint> getFingerprints() {
+    return fingerprints;
+  }
+
+  /**
+   * Asks the class noticer to record when any of the built-in probe classes load. Unlike {@link
+   * #getInstance()}, this doesn't scan the classpath for other fingerprints, so it is cheap enough
+   * for premain.
+   */
+  static void watchBuiltInProbes(ClassArrivalWatcher watcher) {
+    for (WorkloadFingerprint fingerprint : builtIn()) {
+      watcher.watch(fingerprint.getProbeClassName(), __ -> {});
+    }
+  }
+
+  /** Asks the class noticer to record when any of the probe classes load. */
+  void watchProbes() {
+    for (WorkloadFingerprint fingerprint : fingerprints) {
+      watcher.watch(fingerprint.getProbeClassName(), __ -> {});
+    }
+  }
+
+  /** @return the distinct workloads matched, in priority order */
+  List<String> identifyAll() {
+    Set<String> out = new LinkedHashSet<>();
+    for (WorkloadFingerprint fingerprint : fingerprints) {
+      Class<?> probe = findProbe(fingerprint.getProbeClassName());
+      if (probe == null) {
+        continue;
+      }
+      try {
+        String workload = fingerprint.identify(probe);
+        if (workload != null && !workload.isEmpty()) {
+          out.add(workload);
+        }
+      } catch (RuntimeException | LinkageError e) {
+        logger.debug("Ignoring failed workload fingerprint for " + probe.getName(), e);
+      }
+    }
+    return new ArrayList<>(out);
+  }
+
+  /**
+   * @param workloads the matched workloads, in priority order
+   * @return a single description of them, e.g. "Possibly: Tomcat or Spring Boot", or empty
+   */
+  static String describe(List<String> workloads) {
+    if (workloads.size() <= 1) {
+      return workloads.isEmpty() ? "" : workloads.get(0);
+    }
+    return "Possibly: " + String.join(" or ", workloads);
+  }
+
+  // Probes are never initialized, so checking for them has no side effects in the host app
+  private Class<?> findProbe(String className) {
+    try {
+      if (watcher.hasArrived(className)) {
+        // Null for the bootstrap loader or a collected one. Our own loader delegates to the
+        // bootstrap loader, so try that rather than looking in the bootstrap loader alone.
+        ClassLoader loader = watcher.getLoader(className);
+        return Class.forName(className, false, loader != null ? loader : presence.getLoader());
+      }
+      if (!presence.isPresent(className)) {
+        return null;
+      }
+      return Class.forName(className, false, presence.getLoader());
+    } catch (ClassNotFoundException | LinkageError e) {
+      return null;
+    }
+  }
+
+  private static WorkloadFingerprint of(
+      String probeClassName, int priority, Function<Class<?>, String> identify) {
+    return new WorkloadFingerprint() {
+      @Override
+      public String getProbeClassName() {
+        return probeClassName;
+      }
+
+      @Override
+      public int getPriority() {
+        return priority;
+      }
+
+      @Override
+      public String identify(Class<?> probeClass) {
+        return identify.apply(probeClass);
+      }
+    };
+  }
+}
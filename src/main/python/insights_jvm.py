@@ -12,13 +12,26 @@ import re
 import subprocess
 import glob
 import hashlib
+import json
+import threading
+import time
 from collections import namedtuple
+from concurrent.futures import ThreadPoolExecutor, wait
 from datetime import datetime
 from typing import Dict, List
 from dataclasses import dataclass
 
 # Named tuples for structured data
-ProcessInfo = namedtuple('ProcessInfo', ['pid', 'name', 'launch_time', 'cmdline', 'exe', 'processors', 'rhel_version'])
+# start_ticks is the process start time in clock ticks since boot, which with the pid identifies it
+ProcessInfo = namedtuple('ProcessInfo', ['pid', 'name', 'launch_time', 'cmdline', 'exe', 'processors', 'rhel_version', 'start_ticks'],
+                         defaults=(None,))
+
+# Limits for running jinfo / java -version against the JVMs found
+ENRICH_WORKERS = 8
+ENRICH_DEADLINE_SECS = 60
+SUBPROCESS_TIMEOUT_SECS = 10
+
+CACHE_PATH = "/var/tmp/insights-runtimes/cache/jvm-scan-cache.json"
 
 class ProcUtil:
     """Simple class to replace psutil functionality """
@@ -66,11 +79,15 @@ class ProcUtil:
         # Field 22 is starttime (in clock ticks since boot)
         name = stat_fields[1].strip('()')
         launch_time = self.get_process_launch_time(stat_fields)
+        try:
+            start_ticks = int(stat_fields[21])
+        except ValueError:
+            start_ticks = None
 
         cmdline = self.get_process_cmdline(p_id)
         exe = self.get_process_exe(p_id)
 
-        return ProcessInfo(p_id, name, launch_time, cmdline, exe, self.processors, self.rhel_version)
+        return ProcessInfo(p_id, name, launch_time, cmdline, exe, self.processors, self.rhel_version, start_ticks)
 
     def get_process_launch_time(self, stat_fields):
         try:
@@ -120,6 +137,142 @@ class ProcUtil:
                 _processes.append(proc_info)
         return _processes
 
+class ScanCache:
+    """
+    Persistent cache of the results of jinfo and java -version, so that repeat scans only run
+    them for JVMs and JDKs they haven't seen before.
+
+    jinfo results are keyed by pid and start time, as a running process can't change its
+    properties and a recycled pid has a different start time. java -version results are keyed
+    by the executable's path, inode and mtime, so they are shared by every JVM run from the
+    same JDK and redone if the JDK is upgraded in place. Only entries used in the current scan
+    are saved, so the cache holds just the JVMs currently running.
+
+    jinfo output includes system properties, which can hold secrets, so the cache is only read
+    from or written to a directory that is owned by this user and closed to everyone else, and
+    is never reached through a symlink.
+    """
+    FORMAT_VERSION = 1
+
+    def __init__(self, path=None):
+        self.path = path
+        self._processes = {}
+        self._versions = {}
+        self._used_processes = {}
+        self._used_versions = {}
+        self._lock = threading.Lock()
+
+    @classmethod
+    def load(cls, path):
+        """Open the cache stored at path, starting empty if there is no usable cache there"""
+        cache = cls(path)
+        try:
+            dir_fd = cache._open_dir(create=False)
+            try:
+                fd = os.open(os.path.basename(path), os.O_RDONLY | os.O_NOFOLLOW, dir_fd=dir_fd)
+            finally:
+                os.close(dir_fd)
+            with os.fdopen(fd, 'r') as f:
+                data = json.load(f)
+            if data.get('version') == cls.FORMAT_VERSION:
+                cache._processes = dict(data.get('processes', {}))
+                cache._versions = dict(data.get('versions', {}))
+        except (IOError, OSError, ValueError, AttributeError, TypeError):
+            # Missing, unreadable or unsafe, so start again
+            pass
+        return cache
+
+    def _open_dir(self, create):
+        """Open the cache's directory, raising OSError if it is missing or others could use it"""
+        directory = os.path.dirname(self.path)
+        if create:
+            os.makedirs(directory, mode=0o700, exist_ok=True)
+        fd = os.open(directory, os.O_RDONLY | os.O_DIRECTORY | os.O_NOFOLLOW)
+        st = os.fstat(fd)
+        if st.st_uid != os.geteuid() or st.st_mode & 0o077:
+            os.close(fd)
+            raise OSError(f"{directory} must be owned by uid {os.geteuid()} and have mode 0700")
+        return fd
+
+    @staticmethod
+    def process_key(pid, start_ticks):
+        """Key for a process, or None if its start time is unknown"""
+        if start_ticks is None:
+            return None
+        return f"{pid}:{start_ticks}"
+
+    @staticmethod
+    def version_key(exe):
+        """Key for a java executable, or None if it can't be found"""
+        try:
+            st = os.stat(exe)
+        except (OSError, TypeError):
+            return None
+        return f"{exe}:{st.st_ino}:{st.st_mtime_ns}"
+
+    def get_process(self, key):
+        return self._get(self._processes, self._used_processes, key)
+
+    def put_process(self, key, info):
+        self._put(self._used_processes, key, info)
+
+    def get_version(self, key):
+        return self._get(self._versions, self._used_versions, key)
+
+    def put_version(self, key, info):
+        self._put(self._used_versions, key, info)
+
+    def _get(self, entries, used, key):
+        if key is None:
+            return None
+        with self._lock:
+            info = used.get(key, entries.get(key))
+            if info is not None:
+                used[key] = info
+            return info
+
+    def _put(self, used, key, info):
+        if key is None:
+            return
+        with self._lock:
+            used[key] = info
+
+    def save(self):
+        """Write the entries used since loading back to disk, replacing the old cache"""
+        if not self.path:
+            return
+        with self._lock:
+            data = {'version': self.FORMAT_VERSION,
+                    'processes': dict(self._used_processes),
+                    'versions': dict(self._used_versions)}
+        name = os.path.basename(self.path)
+        tmp_name = f"{name}.{os.getpid()}.tmp"
+        dir_fd = None
+        written = False
+        try:
+            dir_fd = self._open_dir(create=True)
+            # Left behind by an earlier run with the same pid that was killed
+            try:
+                os.unlink(tmp_name, dir_fd=dir_fd)
+            except FileNotFoundError:
+                pass
+            fd = os.open(tmp_name, os.O_WRONLY | os.O_CREAT | os.O_EXCL | os.O_NOFOLLOW, 0o600,
+                         dir_fd=dir_fd)
+            with os.fdopen(fd, 'w') as f:
+                json.dump(data, f)
+            os.replace(tmp_name, name, src_dir_fd=dir_fd, dst_dir_fd=dir_fd)
+            written = True
+        except (IOError, OSError) as e:
+            print(f"Error writing scan cache: {e}")
+        finally:
+            if dir_fd is not None:
+                if not written:
+                    try:
+                        os.unlink(tmp_name, dir_fd=dir_fd)
+                    except OSError:
+                        pass
+                os.close(dir_fd)
+
 @dataclass
 class JVMInfo:
     """Container for parsed JVM information"""
@@ -310,13 +463,14 @@ def find_jinfo_binary(java_executable_path: str) -> str:
 
     return None
 
-def run_jinfo(jinfo_path, pid):
+def run_jinfo(jinfo_path, pid, timeout=SUBPROCESS_TIMEOUT_SECS):
     """
     Execute jinfo command to get Java process information.
 
     Args:
         jinfo_path (str): Path to jinfo binary
         pid (int): Process ID
+        timeout (float): Seconds to wait for jinfo
 
     Returns:
         tuple: (success, output)
@@ -326,7 +480,7 @@ def run_jinfo(jinfo_path, pid):
         result = subprocess.run([jinfo_path, str(pid)],
                               capture_output=True,
                               text=True,
-                              timeout=10)
+                              timeout=timeout)
 
         if result.returncode == 0:
             return True, result.stdout
@@ -338,12 +492,13 @@ def run_jinfo(jinfo_path, pid):
     except Exception as e:
         return False, f"Error running JPS: {e}"
 
-def run_java_version(java_executable_path):
+def run_java_version(java_executable_path, timeout=SUBPROCESS_TIMEOUT_SECS):
     """
     Execute java -version command to get basic Java information.
 
     Args:
         java_executable_path (str): Path to java executable
+        timeout (float): Seconds to wait for java -version
 
     Returns:
         tuple: (success, output)
@@ -352,7 +507,7 @@ def run_java_version(java_executable_path):
         result = subprocess.run([java_executable_path, '-version'],
                               capture_output=True,
                               text=True,
-                              timeout=10)
+                              timeout=timeout)
 
         # java -version outputs to stderr by default
         output = result.stderr if result.stderr else result.stdout
@@ -484,20 +639,110 @@ def version_to_dict(output):
 
     return info
 
-def get_extra_info(exe, pid):
+def timed_out_info():
+    """Extra info for a JVM that couldn't be examined before the deadline"""
+    return {"method": "timeout"}
+
+def _time_left(deadline):
+    """Seconds until deadline (a time.monotonic() value), capped at the subprocess timeout"""
+    if deadline is None:
+        return SUBPROCESS_TIMEOUT_SECS
+    return min(SUBPROCESS_TIMEOUT_SECS, deadline - time.monotonic())
+
+def get_extra_info(exe, pid, deadline=None, cache=None):
+    """
+    Run jinfo against the process, falling back to java -version.
+
+    Args:
+        exe (str): Path to the process's java executable
+        pid (int): Process ID
+        deadline (float): time.monotonic() value by which to give up, or None
+        cache (ScanCache): Where to look up and record java -version results, or None
+
+    Returns:
+        dict: Extra report fields, or timed_out_info() if the deadline passed first
+    """
     jinfo_path = find_jinfo_binary(exe)
 
     if jinfo_path:
-        success, output = run_jinfo(jinfo_path, pid)
+        timeout = _time_left(deadline)
+        if timeout <= 0:
+            return timed_out_info()
+        success, output = run_jinfo(jinfo_path, pid, timeout)
 
         if success:
             return jinfo_to_dict(output)
 
-    success, output = run_java_version(exe)
+    version_key = ScanCache.version_key(exe) if cache else None
+    if version_key:
+        info = cache.get_version(version_key)
+        if info is not None:
+            return info
+
+    timeout = _time_left(deadline)
+    if timeout <= 0:
+        return timed_out_info()
+    success, output = run_java_version(exe, timeout)
     if success:
-        return version_to_dict(output)
+        info = version_to_dict(output)
+        if version_key:
+            cache.put_version(version_key, info)
+        return info
+    if _time_left(deadline) <= 0:
+        return timed_out_info()
     return {}
 
+def enrich_all(processes, workers=ENRICH_WORKERS, deadline_secs=ENRICH_DEADLINE_SECS, cache=None):
+    """
+    Run get_extra_info for many processes at once, on a bounded pool of threads.
+    Each subprocess is cut short at the shared deadline, so the whole stage takes
+    about as long as the slowest JVM (at most deadline_secs), not the sum of them.
+
+    Args:
+        processes (list): ProcessInfo for each JVM
+        workers (int): Most subprocesses to run at once
+        deadline_secs (float): Time allowed for the whole stage
+        cache (ScanCache): Results from earlier scans, which is updated with new ones, or None
+
+    Returns:
+        dict: pid -> extra info, which is timed_out_info() for JVMs not done in time
+    """
+    results = {}
+    process_keys = {}
+    pending = []
+    for p in processes:
+        process_keys[p.pid] = ScanCache.process_key(p.pid, p.start_ticks) if cache else None
+        info = cache.get_process(process_keys[p.pid]) if cache else None
+        if info is not None:
+            results[p.pid] = info
+        else:
+            pending.append(p)
+    if not pending:
+        return results
+
+    deadline = time.monotonic() + deadline_secs
+    executor = ThreadPoolExecutor(max_workers=min(workers, len(pending)),
+                                  thread_name_prefix='insights-jvm-enrich')
+    futures = {executor.submit(get_extra_info, p.exe, p.pid, deadline, cache): p.pid for p in pending}
+    done, not_done = wait(futures, timeout=deadline_secs)
+    for future in done:
+        pid = futures[future]
+        try:
+            results[pid] = future.result()
+        except Exception:
+            # e.g. jinfo output missing expected properties
+            results[pid] = {}
+        # Only jinfo's view of the process itself is kept. Failures and timeouts are tried again
+        # next scan, as is jinfo for a JVM that fell back to java -version, which is cached by JDK
+        if cache and results[pid].get("method") == "jinfo":
+            cache.put_process(process_keys[pid], results[pid])
+    for future in not_done:
+        future.cancel()
+        results[futures[future]] = timed_out_info()
+    # Don't wait for stragglers, their subprocess timeouts will end them
+    executor.shutdown(wait=False)
+    return results
+
 def get_classpath(cmdline):
     """Retrieve classpath from list of Java args"""
     it_args = iter(cmdline)
@@ -561,14 +806,14 @@ def get_java_memory(cmdline):
         pass
     return (min_mem, max_mem)
 
-def make_report(nt):
-    """Convert Named Tuple to Report Dictionary"""
+def make_report(nt, extra_info=None):
+    """Convert Named Tuple to Report Dictionary, running get_extra_info unless extra_info is given"""
     d = {'java.class.path': get_classpath(nt.cmdline), 'name': nt.exe,
             'launch.time': nt.launch_time, 'rhel.version': nt.rhel_version,
          'processors': nt.processors }
     (d['jvm.heap.min'], d['jvm.heap.max']) = get_java_memory(nt.cmdline)
     (d['jvm.args'], d['jboss.version']) = get_java_args(nt.cmdline)
-    d.update(get_extra_info(nt.exe, nt.pid))
+    d.update(get_extra_info(nt.exe, nt.pid) if extra_info is None else extra_info)
     return d
 
 # Main script
@@ -576,27 +821,28 @@ if __name__ == '__main__':
     proc = ProcUtil()
 
     hostname = os.uname()[1]
-    processes = proc.get_processes()
-    for p in processes:
-        if p.exe is None:
-            continue
-        # Check if 'java' is in the process name or exec'd binary
-        if 'java' in p.name.lower() or 'java' in p.exe.lower():
-            report = {"version" : "1.0.2", "psdata": make_report(p)}
-            report['psdata']['system.hostname'] = hostname
-            # Compute SHA256 hash of the report contents
-            json_output = pretty_json(report)
-            content_hash = hashlib.sha256(json_output.encode('utf-8')).hexdigest()
+    # Check if 'java' is in the process name or exec'd binary
+    jvms = [p for p in proc.get_processes()
+            if p.exe is not None and ('java' in p.name.lower() or 'java' in p.exe.lower())]
+    cache = ScanCache.load(CACHE_PATH)
+    extra_infos = enrich_all(jvms, cache=cache)
+    cache.save()
+    for p in jvms:
+        report = {"version" : "1.0.2", "psdata": make_report(p, extra_infos[p.pid])}
+        report['psdata']['system.hostname'] = hostname
+        # Compute SHA256 hash of the report contents
+        json_output = pretty_json(report)
+        content_hash = hashlib.sha256(json_output.encode('utf-8')).hexdigest()
+        
+        # Write report to file using SHA256 hash as filename
+        output_dir = "/var/tmp/insights-runtimes/uploads"
+        try:
+            os.makedirs(output_dir, exist_ok=True)
+            filename = f"{content_hash}_connect.json"
+            filepath = os.path.join(output_dir, filename)
             
-            # Write report to file using SHA256 hash as filename
-            output_dir = "/var/tmp/insights-runtimes/uploads"
-            try:
-                os.makedirs(output_dir, exist_ok=True)
-                filename = f"{content_hash}_connect.json"
-                filepath = os.path.join(output_dir, filename)
-                
-                with open(filepath, 'w') as f:
-                    f.write(json_output)
-                
-            except (OSError, IOError) as e:
-                print(f"Error writing report to file: {e}")
\ No newline at end of file
+            with open(filepath, 'w') as f:
+                f.write(json_output)
+            
+        except (OSError, IOError) as e:
+            print(f"Error writing report to file: {e}")
\ No newline at end of file
@@ -1,4 +1,4 @@
-/* Copyright (C) Red Hat 2024 */
+/* Copyright (C) Red Hat 2024-2026 */
 package com.redhat.insights.agent;
 
 import static com.redhat.insights.agent.AgentMain.parseArgs;
@@ -44,4 +44,37 @@ public class AgentBasicReportTest {
     assertEquals("YYY", String.valueOf(d.get("pod_namespace")));
     assertTrue(Boolean.valueOf(String.valueOf(d.get("is_ocp"))));
   }
+
+  @Test
+  void testMetricsOnlyWhenRequested() throws JsonProcessingException {
+    ObjectMapper oMapper = new ObjectMapper();
+    InsightsReport report = AgentBasicReport.of(parseArgs("name=foo").get());
+    Map<String, Object> r =
+        oMapper.readValue(report.serialize(), new TypeReference<Map<String, Object>>() {});
+    assertFalse(((Map<String, Object>) r.get("details")).containsKey("metrics"));
+
+    report = AgentBasicReport.of(parseArgs("name=foo;report_metrics=true").get());
+    r = oMapper.readValue(report.serialize(), new TypeReference<Map<String, Object>>() {});
+    Map<String, Object> m =
+        (Map<String, Object>) ((Map<String, Object>) r.get("details")).get("metrics");
+    assertNotNull(m);
+    assertTrue(m.containsKey("transform_total_nanos"));
+    assertTrue(m.containsKey("bytes_hashed"));
+    assertTrue(m.get("http_status_counts") instanceof Map);
+  }
+
+  @Test
+  void testMetricsAreTheSameOnEveryWrite() throws JsonProcessingException {
+    InsightsReport report = AgentBasicReport.of(parseArgs("name=foo;report_metrics=true").get());
+    report.generateReport();
+    ObjectMapper oMapper = new ObjectMapper();
+    Map<String, Object> first =
+        oMapper.readValue(report.serialize(), new TypeReference<Map<String, Object>>() {});
+    // As writing the report to the upload does
+    AgentMetrics.getInstance().recordSerialization(1000, 100);
+    Map<String, Object> second =
+        oMapper.readValue(report.serialize(), new TypeReference<Map<String, Object>>() {});
+    assertNotNull(((Map<String, Object>) first.get("details")).get("metrics"));
+    assertEquals(first.get("details"), second.get("details"));
+  }
 }
@@ -0,0 +1,41 @@
+/* Copyright (C) Red Hat 2026 */
+package com.redhat.insights.agent;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.redhat.insights.agent.doubles.NoopInsightsLogger;
+import com.redhat.insights.jars.JarAnalyzer;
+import com.redhat.insights.jars.JarInfo;
+import java.util.List;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.Test;
+
+public class AgentClasspathJarInfoSubreportTest {
+
+  @Test
+  public void testParallelScanMatchesSerialScan() {
+    AgentClasspathJarInfoSubreport serial =
+        new AgentClasspathJarInfoSubreport(new NoopInsightsLogger(), new CachingJarAnalyzer(), 1);
+    AgentClasspathJarInfoSubreport parallel =
+        new AgentClasspathJarInfoSubreport(new NoopInsightsLogger(), new CachingJarAnalyzer(), 4);
+
+    serial.generateReport();
+    parallel.generateReport();
+
+    List<String> expected = describe(serial);
+    assertFalse(expected.isEmpty());
+    assertEquals(expected, describe(parallel));
+  }
+
+  private static List<String> describe(AgentClasspathJarInfoSubreport report) {
+    return report.getJarInfos().stream()
+        .map(
+            (JarInfo jar) ->
+                jar.name()
+                    + ":"
+                    + jar.version()
+                    + ":"
+                    + jar.attributes().get(JarAnalyzer.SHA512_CHECKSUM_KEY))
+        .collect(Collectors.toList());
+  }
+}
@@ -0,0 +1,107 @@
+/* Copyright (C) Red Hat 2026 */
+package com.redhat.insights.agent;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.redhat.insights.jars.JarInfo;
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import org.junit.jupiter.api.Test;
+
+public class AgentMetricsTest {
+
+  @Test
+  public void testHistogram() {
+    AgentMetrics.Histogram histogram = new AgentMetrics.Histogram();
+    assertEquals(0, histogram.getPercentile(0.99));
+    for (int i = 0; i < 99; i++) {
+      histogram.record(100);
+    }
+    histogram.record(1_000_000);
+
+    assertEquals(100, histogram.getCount());
+    assertEquals(99 * 100 + 1_000_000, histogram.getTotal());
+    assertEquals(1_000_000, histogram.getMax());
+    // 100 falls in the bucket [64, 127]
+    assertEquals(127, histogram.getPercentile(0.5));
+    assertEquals(127, histogram.getPercentile(0.99));
+    assertEquals(1_000_000, histogram.getPercentile(1.0));
+  }
+
+  @Test
+  public void testSnapshotIsUnaffectedByLaterRecording() {
+    AgentMetrics metrics = new AgentMetrics();
+    metrics.recordSerialization(500, 300);
+    metrics.recordHttpSend(1000, 202);
+    AgentMetrics.Snapshot snapshot = metrics.snapshot();
+
+    metrics.recordSerialization(700, 200);
+    metrics.recordHttpSend(1000, 500);
+    assertEquals(1L, snapshot.getValues().get("reports_serialized"));
+    assertEquals(300L, snapshot.getValues().get("payload_total_bytes"));
+    assertEquals(Collections.singletonMap(202, 1L), snapshot.getHttpStatusCounts());
+    assertEquals(2L, metrics.snapshot().getValues().get("reports_serialized"));
+  }
+
+  @Test
+  public void testRecording() {
+    AgentMetrics metrics = new AgentMetrics();
+    metrics.recordJarAnalyzed(1024);
+    metrics.recordJarAnalyzed(-1);
+    metrics.recordJarCacheHit();
+    metrics.recordSerialization(500, 300);
+    metrics.recordSerialization(700, 200);
+    metrics.recordHttpSend(1000, 202);
+    metrics.recordHttpSend(1000, 202);
+    metrics.recordHttpSend(1000, 500);
+    metrics.recordHttpFailure(2000);
+
+    assertEquals(2, metrics.getJarsAnalyzed());
+    assertEquals(1024, metrics.getBytesHashed());
+    assertEquals(1, metrics.getJarCacheHits());
+    assertEquals(2, metrics.getReportsSerialized());
+    assertEquals(500, metrics.getPayloadTotalBytes());
+    assertEquals(200, metrics.getLastPayloadBytes());
+    assertEquals(4, metrics.getHttpSends());
+    assertEquals(1, metrics.getHttpFailures());
+    assertEquals("{202=2, 500=1}", metrics.getHttpStatusCounts());
+  }
+
+  @Test
+  public void testQueueGauges() {
+    AgentMetrics metrics = new AgentMetrics();
+    assertEquals(0, metrics.getQueueDepth());
+    BoundedJarQueue queue = new BoundedJarQueue(1);
+    metrics.setJarQueue(queue);
+    queue.offer(new JarInfo("a.jar", "1", Collections.emptyMap()));
+    queue.offer(new JarInfo("b.jar", "1", Collections.emptyMap()));
+    assertEquals(1, metrics.getQueueDepth());
+    assertEquals(1, metrics.getQueueOverflows());
+  }
+
+  @Test
+  public void testTransformIsTimed() throws Exception {
+    // Not the shared instance, which any noticer left installed by another test also records to
+    AgentMetrics metrics = new AgentMetrics();
+    ClassNoticer noticer =
+        new ClassNoticer(new BoundedJarQueue(16), false, new CachingJarAnalyzer(), metrics);
+    noticer.transform(null, "org/example/Foo", null, Test.class.getProtectionDomain(), null);
+    assertEquals(1, metrics.getTransformCount());
+    assertEquals(1, metrics.getCodeSourcesSeen());
+  }
+
+  @Test
+  public void testJmxRegistration() throws Exception {
+    AgentMetrics metrics = AgentMetrics.getInstance();
+    metrics.register();
+    // Registering twice is harmless
+    metrics.register();
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    ObjectName name = new ObjectName(AgentMetrics.OBJECT_NAME);
+    assertTrue(server.isRegistered(name));
+    assertEquals(metrics.getTransformCount(), server.getAttribute(name, "TransformCount"));
+    assertNotNull(server.getAttribute(name, "HttpStatusCounts"));
+  }
+}
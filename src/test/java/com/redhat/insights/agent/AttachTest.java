@@ -0,0 +1,110 @@
+/* Copyright (C) Red Hat 2026 */
+package com.redhat.insights.agent;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.tools.attach.AgentLoadException;
+import java.io.ByteArrayOutputStream;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+public class AttachTest {
+
+  @Test
+  public void testResolveTargets() {
+    String self = ManagementFactory.getRuntimeMXBean().getName().split("@")[0];
+    assertEquals(Arrays.asList("1", "2"), Attach.resolveTargets("1, 2,,1," + self));
+    assertFalse(Attach.resolveTargets(Attach.ALL_TARGETS).contains(self));
+  }
+
+  @Test
+  public void testAttachesConcurrentlyWithTimeouts() throws Exception {
+    // Every target but the hung one waits for the others, so this only finishes if they overlap
+    CountDownLatch allStarted = new CountDownLatch(3);
+    CountDownLatch release = new CountDownLatch(1);
+    List<Attach.Result> results =
+        Attach.attachAll(
+            Arrays.asList("1", "2", "3", "4"),
+            pid -> {
+              if ("4".equals(pid)) {
+                hangIgnoringInterrupts(release);
+              }
+              allStarted.countDown();
+              assertTrue(allStarted.await(10, TimeUnit.SECONDS));
+              if ("2".equals(pid)) {
+                throw new AgentLoadException("wrong version");
+              }
+              if ("3".equals(pid)) {
+                throw new IllegalStateException("boom");
+              }
+            },
+            4,
+            1);
+    release.countDown();
+
+    assertEquals(4, results.size());
+    assertEquals(Attach.ATTACHED, results.get(0).status);
+    assertEquals(Attach.INCOMPATIBLE, results.get(1).status);
+    assertEquals(Attach.FAILED, results.get(2).status);
+    assertEquals(Attach.TIMED_OUT, results.get(3).status);
+    assertFalse(Attach.isSuccess(results));
+    assertTrue(Attach.isSuccess(results.subList(0, 2)));
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    Attach.writeSummary(results, out);
+    Map<String, Object> summary =
+        new ObjectMapper()
+            .readValue(out.toByteArray(), new TypeReference<Map<String, Object>>() {});
+    assertEquals(1, summary.get(Attach.ATTACHED));
+    assertEquals(1, summary.get(Attach.INCOMPATIBLE));
+    assertEquals(1, summary.get(Attach.FAILED));
+    assertEquals(1, summary.get(Attach.TIMED_OUT));
+    List<Map<String, Object>> targets = (List<Map<String, Object>>) summary.get("targets");
+    assertEquals("3", targets.get(2).get("pid"));
+    assertTrue(((String) targets.get(2).get("message")).contains("boom"));
+  }
+
+  @Test
+  public void testHungTargetsDoNotHoldUpTheRest() {
+    // More hung targets than threads, none of which can be interrupted
+    CountDownLatch release = new CountDownLatch(1);
+    long start = System.nanoTime();
+    List<Attach.Result> results =
+        Attach.attachAll(
+            Arrays.asList("1", "2", "3", "4", "5"),
+            pid -> {
+              if (!"5".equals(pid)) {
+                hangIgnoringInterrupts(release);
+              }
+            },
+            2,
+            1);
+    long took = TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start);
+    release.countDown();
+
+    assertTrue(took < 10, "took " + took + "s");
+    for (Attach.Result result : results.subList(0, 4)) {
+      assertEquals(Attach.TIMED_OUT, result.status);
+    }
+    // Started once two timed out targets freed their threads
+    assertEquals(Attach.ATTACHED, results.get(4).status);
+  }
+
+  private static void hangIgnoringInterrupts(CountDownLatch release) {
+    while (true) {
+      try {
+        release.await();
+        return;
+      } catch (InterruptedException e) {
+        // Like an attach stuck in native code
+      }
+    }
+  }
+}
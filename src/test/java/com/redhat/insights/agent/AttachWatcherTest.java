@@ -0,0 +1,345 @@
+/* Copyright (C) Red Hat 2026 */
+package com.redhat.insights.agent;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import com.sun.tools.attach.AgentLoadException;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+
+public class AttachWatcherTest {
+
+  private static final Path DIR = Paths.get("target", "attach-watcher-test");
+  private static final Path PERF_DATA_FIXTURE =
+      Paths.get("src/test/resources/hsperfdata/jdk8-parallel-gc");
+
+  @Test
+  public void testAttachesOncePerJvm() throws Exception {
+    Path perfData = reset(DIR.resolve("hsperfdata_test"));
+    Path proc = reset(DIR.resolve("proc"));
+    List<String> attached = Collections.synchronizedList(new ArrayList<>());
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    AttachWatcher watcher =
+        new AttachWatcher(
+            perfData, proc, attached::add, 2, 5, new PrintStream(out, true, "UTF-8"), 999);
+
+    startJvm(perfData, proc, 100, 5000);
+    startJvm(perfData, proc, 101, 6000);
+    // Ourselves, and a file left behind by a JVM that was killed
+    startJvm(perfData, proc, 999, 7000);
+    Files.createFile(perfData.resolve("102"));
+
+    assertEquals(2, watcher.scan().size());
+    assertEquals(2, attached.size());
+    assertTrue(attached.containsAll(Arrays.asList("100", "101")));
+    assertTrue(new String(out.toByteArray(), StandardCharsets.UTF_8).contains("\"attached\":2"));
+
+    // Nothing new
+    assertTrue(watcher.scan().isEmpty());
+
+    // One exits, and its pid is reused by a new JVM; another starts
+    startJvm(perfData, proc, 100, 8000);
+    startJvm(perfData, proc, 103, 8100);
+    Files.delete(perfData.resolve("101"));
+    Files.delete(proc.resolve("101").resolve("stat"));
+    assertEquals(2, watcher.scan().size());
+    assertEquals(4, attached.size());
+    assertEquals(2, watcher.getHandledCount());
+  }
+
+  @Test
+  public void testUnchangedDirectoryIsNotListed() throws Exception {
+    Path perfData = reset(DIR.resolve("settled/hsperfdata_test"));
+    Path proc = reset(DIR.resolve("settled/proc"));
+    List<String> attached = new ArrayList<>();
+    AttachWatcher watcher =
+        new AttachWatcher(
+            perfData, proc, attached::add, 1, 5, new PrintStream(new ByteArrayOutputStream()), 999);
+
+    startJvm(perfData, proc, 200, 100);
+    FileTime settled = FileTime.fromMillis(System.currentTimeMillis() - 60_000);
+    Files.setLastModifiedTime(perfData, settled);
+    assertEquals(1, watcher.scan().size());
+
+    // A new file without the directory timestamp changing isn't looked for
+    startJvm(perfData, proc, 201, 200);
+    Files.setLastModifiedTime(perfData, settled);
+    assertTrue(watcher.scan().isEmpty());
+
+    Files.setLastModifiedTime(perfData, FileTime.fromMillis(System.currentTimeMillis()));
+    assertEquals(1, watcher.scan().size());
+  }
+
+  @Test
+  public void testWaitsUntilSigquitIsCaught() throws Exception {
+    Path perfData = reset(DIR.resolve("sigquit/hsperfdata_test"));
+    Path proc = reset(DIR.resolve("sigquit/proc"));
+    List<String> attached = new ArrayList<>();
+    AttachWatcher watcher =
+        new AttachWatcher(
+            perfData, proc, attached::add, 1, 5, new PrintStream(new ByteArrayOutputStream()), 999);
+
+    startJvm(perfData, proc, 300, 100);
+    writeSigCgt(proc, 300, "0000000000000000");
+    FileTime settled = FileTime.fromMillis(System.currentTimeMillis() - 60_000);
+    Files.setLastModifiedTime(perfData, settled);
+    assertTrue(watcher.scan().isEmpty());
+
+    // Still looked for though the directory hasn't changed
+    writeSigCgt(proc, 300, "0000000181005ccf");
+    assertEquals(1, watcher.scan().size());
+    assertEquals(Arrays.asList("300"), attached);
+  }
+
+  @Test
+  public void testWaitsUntilCountersAreAccessible() throws Exception {
+    Path perfData = reset(DIR.resolve("accessible/hsperfdata_test"));
+    Path proc = reset(DIR.resolve("accessible/proc"));
+    List<String> attached = new ArrayList<>();
+    AttachWatcher watcher =
+        new AttachWatcher(
+            perfData, proc, attached::add, 1, 5, new PrintStream(new ByteArrayOutputStream()), 999);
+
+    startJvm(perfData, proc, 302, 100);
+    byte[] counters = Files.readAllBytes(PERF_DATA_FIXTURE);
+    // The accessible flag in the prologue
+    counters[7] = 0;
+    Files.write(perfData.resolve("302"), counters);
+    assertTrue(watcher.scan().isEmpty());
+
+    counters[7] = 1;
+    Files.write(perfData.resolve("302"), counters);
+    assertEquals(1, watcher.scan().size());
+  }
+
+  @Test
+  public void testWaitsForMinimumUptimeWithoutStatus() throws Exception {
+    Path perfData = reset(DIR.resolve("uptime/hsperfdata_test"));
+    Path proc = reset(DIR.resolve("uptime/proc"));
+    List<String> attached = new ArrayList<>();
+    AttachWatcher watcher =
+        new AttachWatcher(
+            perfData, proc, attached::add, 1, 5, new PrintStream(new ByteArrayOutputStream()), 999);
+
+    // Started 11s after boot, at 100 ticks a second
+    startJvm(perfData, proc, 301, 1100);
+    Files.delete(proc.resolve("301").resolve("status"));
+    writeUptime(proc, 12.5);
+    assertTrue(watcher.scan().isEmpty());
+
+    writeUptime(proc, 11 + AttachWatcher.MIN_UPTIME_MILLIS / 1000.0);
+    assertEquals(1, watcher.scan().size());
+  }
+
+  @Test
+  public void testRetriesFailuresWithBackoff() throws Exception {
+    Path perfData = reset(DIR.resolve("retry/hsperfdata_test"));
+    Path proc = reset(DIR.resolve("retry/proc"));
+    AtomicInteger failures = new AtomicInteger(2);
+    List<String> attached = Collections.synchronizedList(new ArrayList<>());
+    AttachWatcher watcher =
+        new AttachWatcher(
+            perfData,
+            proc,
+            pid -> {
+              attached.add(pid);
+              if ("401".equals(pid)) {
+                throw new AgentLoadException("wrong version");
+              }
+              if (failures.getAndDecrement() > 0) {
+                throw new IllegalStateException("not yet");
+              }
+            },
+            2,
+            5,
+            new PrintStream(new ByteArrayOutputStream()),
+            999);
+
+    startJvm(perfData, proc, 400, 100);
+    startJvm(perfData, proc, 401, 200);
+    long now = System.currentTimeMillis();
+    assertEquals(2, watcher.scan(now).size());
+    assertEquals(1, watcher.getHandledCount());
+
+    // Not before the delay, which doubles after each failure
+    assertTrue(watcher.scan(now + AttachWatcher.MIN_RETRY_MILLIS - 1).isEmpty());
+    now += AttachWatcher.MIN_RETRY_MILLIS;
+    assertEquals(Attach.FAILED, watcher.scan(now).get(0).status);
+    assertTrue(watcher.scan(now + AttachWatcher.MIN_RETRY_MILLIS).isEmpty());
+    now += 2 * AttachWatcher.MIN_RETRY_MILLIS;
+    assertEquals(Attach.ATTACHED, watcher.scan(now).get(0).status);
+    assertEquals(2, watcher.getHandledCount());
+    assertTrue(watcher.scan(now + AttachWatcher.MAX_RETRY_MILLIS).isEmpty());
+
+    // The incompatible one was only tried once
+    assertEquals(3, Collections.frequency(attached, "400"));
+    assertEquals(1, Collections.frequency(attached, "401"));
+  }
+
+  @Test
+  public void testGivesUpAfterMaxAttempts() throws Exception {
+    Path perfData = reset(DIR.resolve("give-up/hsperfdata_test"));
+    Path proc = reset(DIR.resolve("give-up/proc"));
+    List<String> attached = new ArrayList<>();
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    AttachWatcher watcher =
+        new AttachWatcher(
+            perfData,
+            proc,
+            pid -> {
+              attached.add(pid);
+              throw new IllegalStateException("never");
+            },
+            1,
+            5,
+            new PrintStream(out, true, "UTF-8"),
+            999);
+
+    startJvm(perfData, proc, 500, 100);
+    long now = System.currentTimeMillis();
+    for (int attempt = 1; attempt < AttachWatcher.MAX_ATTEMPTS; attempt++) {
+      assertEquals(Attach.FAILED, watcher.scan(now).get(0).status);
+      now += AttachWatcher.MAX_RETRY_MILLIS;
+    }
+    assertEquals(Attach.GAVE_UP, watcher.scan(now).get(0).status);
+    assertTrue(new String(out.toByteArray(), StandardCharsets.UTF_8).contains("\"gave_up\":1"));
+    assertEquals(1, watcher.getHandledCount());
+
+    assertTrue(watcher.scan(now + AttachWatcher.MAX_RETRY_MILLIS).isEmpty());
+    assertEquals(AttachWatcher.MAX_ATTEMPTS, attached.size());
+  }
+
+  @Test
+  public void testGivesUpOnJvmThatNeverCatchesSigquit() throws Exception {
+    Path perfData = reset(DIR.resolve("never-ready/hsperfdata_test"));
+    Path proc = reset(DIR.resolve("never-ready/proc"));
+    List<String> attached = new ArrayList<>();
+    AttachWatcher watcher =
+        new AttachWatcher(
+            perfData, proc, attached::add, 1, 5, new PrintStream(new ByteArrayOutputStream()), 999);
+
+    // As with -Xrs
+    startJvm(perfData, proc, 501, 100);
+    writeSigCgt(proc, 501, "0000000000000000");
+    long now = System.currentTimeMillis();
+    assertTrue(watcher.scan(now).isEmpty());
+    List<Attach.Result> results = watcher.scan(now + AttachWatcher.MAX_READY_WAIT_MILLIS);
+    assertEquals(1, results.size());
+    assertEquals(Attach.GAVE_UP, results.get(0).status);
+    assertTrue(attached.isEmpty());
+    assertEquals(1, watcher.getHandledCount());
+  }
+
+  @Test
+  public void testNoRetryWhileEarlierAttachIsStuck() throws Exception {
+    Path perfData = reset(DIR.resolve("stuck/hsperfdata_test"));
+    Path proc = reset(DIR.resolve("stuck/proc"));
+    CountDownLatch release = new CountDownLatch(1);
+    AtomicInteger attempts = new AtomicInteger();
+    AttachWatcher watcher =
+        new AttachWatcher(
+            perfData,
+            proc,
+            pid -> {
+              if (attempts.incrementAndGet() == 1) {
+                // Stuck, and deaf to interrupts
+                while (release.getCount() > 0) {
+                  try {
+                    release.await();
+                  } catch (InterruptedException e) {
+                    // Keep waiting
+                  }
+                }
+              }
+            },
+            1,
+            1,
+            new PrintStream(new ByteArrayOutputStream()),
+            999);
+
+    startJvm(perfData, proc, 502, 100);
+    long now = System.currentTimeMillis();
+    Attach.Result timedOut = watcher.scan(now).get(0);
+    assertEquals(Attach.TIMED_OUT, timedOut.status);
+    assertNotNull(timedOut.abandoned);
+
+    // Still stuck when the retry is due
+    now += AttachWatcher.MIN_RETRY_MILLIS;
+    assertTrue(watcher.scan(now).isEmpty());
+    assertEquals(1, attempts.get());
+
+    release.countDown();
+    timedOut.abandoned.join(TimeUnit.SECONDS.toMillis(10));
+    now += AttachWatcher.MAX_RETRY_MILLIS;
+    assertEquals(Attach.ATTACHED, watcher.scan(now).get(0).status);
+    assertEquals(2, attempts.get());
+  }
+
+  @Test
+  public void testRetryDelayIsCapped() {
+    assertEquals(AttachWatcher.MIN_RETRY_MILLIS, AttachWatcher.retryDelayMillis(1));
+    assertEquals(2 * AttachWatcher.MIN_RETRY_MILLIS, AttachWatcher.retryDelayMillis(2));
+    assertEquals(AttachWatcher.MAX_RETRY_MILLIS, AttachWatcher.retryDelayMillis(100));
+  }
+
+  @Test
+  public void testDefaultPerfDataDirIsTmpOnLinux() {
+    assumeTrue(System.getProperty("os.name").startsWith("Linux"));
+    assertEquals(
+        Paths.get("/tmp", "hsperfdata_" + System.getProperty("user.name")),
+        AttachWatcher.defaultPerfDataDir());
+  }
+
+  private static void startJvm(Path perfData, Path proc, long pid, long startTime)
+      throws IOException {
+    Files.write(perfData.resolve(String.valueOf(pid)), new byte[0]);
+    Path procDir = Files.createDirectories(proc.resolve(String.valueOf(pid)));
+    // A command name with spaces and parentheses, to check the fields are counted from the end
+    StringBuilder stat = new StringBuilder(pid + " (java (main) x) S 1");
+    for (int field = 5; field < 22; field++) {
+      stat.append(' ').append(field);
+    }
+    stat.append(' ').append(startTime).append(" 0 0\n");
+    Files.write(procDir.resolve("stat"), stat.toString().getBytes(StandardCharsets.US_ASCII));
+    // What a JVM that has installed its signal handlers shows
+    writeSigCgt(proc, pid, "0000000181005ccf");
+  }
+
+  private static void writeSigCgt(Path proc, long pid, String mask) throws IOException {
+    String status = "Name:\tjava\nState:\tS (sleeping)\nSigCgt:\t" + mask + "\n";
+    Files.write(
+        proc.resolve(String.valueOf(pid)).resolve("status"),
+        status.getBytes(StandardCharsets.US_ASCII));
+  }
+
+  private static void writeUptime(Path proc, double seconds) throws IOException {
+    Files.write(
+        proc.resolve("uptime"),
+        (seconds + " 0.00\n").getBytes(StandardCharsets.US_ASCII));
+  }
+
+  private static Path reset(Path dir) throws IOException {
+    if (Files.exists(dir)) {
+      try (Stream<Path> paths = Files.walk(dir)) {
+        paths.sorted(Collections.reverseOrder()).forEach(p -> p.toFile().delete());
+      }
+    }
+    return Files.createDirectories(dir);
+  }
+}
@@ -0,0 +1,86 @@
+/* Copyright (C) Red Hat 2026 */
+package com.redhat.insights.agent;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.redhat.insights.jars.JarInfo;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+public class BoundedJarQueueTest {
+
+  @Test
+  public void testOverflowIsRecoveredByRescan() {
+    BoundedJarQueue jarsToSend = new BoundedJarQueue(1);
+    ClassNoticer noticer = new ClassNoticer(jarsToSend);
+    Class<?>[] loaded = {Test.class, Mockito.class};
+    jarsToSend.setRescan(() -> noticer.rescan(loaded));
+
+    // Two new jars, but only room for one
+    noticer.noticeAll(loaded);
+    assertEquals(1, jarsToSend.getDepth());
+    assertEquals(1, jarsToSend.getOverflowCount());
+    assertTrue(jarsToSend.isRescanNeeded());
+
+    // Sending makes room, and the rescan finds the jar that didn't fit
+    List<JarInfo> sent = new ArrayList<>();
+    assertEquals(1, jarsToSend.drainTo(sent));
+    assertEquals(1, jarsToSend.getRescanCount());
+    assertFalse(jarsToSend.isRescanNeeded());
+    assertEquals(1, jarsToSend.getDepth());
+    jarsToSend.drainTo(sent);
+    assertEquals(2, sent.size());
+    assertNotEquals(sent.get(0).name(), sent.get(1).name());
+
+    // Nothing overflowed since, so no more rescans, and nothing is sent twice
+    noticer.rescan(loaded);
+    assertEquals(0, jarsToSend.drainTo(sent));
+    assertEquals(1, jarsToSend.getRescanCount());
+  }
+
+  @Test
+  public void testBatchesUntilFullOrLingered() {
+    AtomicLong now = new AtomicLong(1);
+    AtomicInteger fullBatches = new AtomicInteger();
+    BoundedJarQueue jarsToSend = new BoundedJarQueue(10, 3, Duration.ofSeconds(60), now::get);
+    jarsToSend.setBatchListener(fullBatches::incrementAndGet);
+    assertFalse(jarsToSend.isBatchReady());
+
+    // One jar on its own waits for the linger time, but the queue doesn't pretend to be empty
+    jarsToSend.offer(jar("a"));
+    assertFalse(jarsToSend.isEmpty());
+    assertFalse(jarsToSend.isBatchReady());
+    now.addAndGet(Duration.ofSeconds(59).toNanos());
+    assertFalse(jarsToSend.isBatchReady());
+    now.addAndGet(Duration.ofSeconds(1).toNanos());
+    assertTrue(jarsToSend.isBatchReady());
+
+    // A full batch is announced straight away, and a batch drain takes one batch at a time
+    for (String name : new String[] {"b", "c", "d"}) {
+      jarsToSend.offer(jar(name));
+    }
+    assertEquals(2, fullBatches.get());
+    List<JarInfo> sent = new ArrayList<>();
+    assertEquals(3, jarsToSend.drainBatch(sent));
+    // The jar left behind has already waited, so goes in the next batch
+    assertTrue(jarsToSend.isBatchReady());
+    assertEquals(1, jarsToSend.drainBatch(sent));
+    assertEquals(4, sent.size());
+
+    // Once drained, the next jar starts a new linger window
+    jarsToSend.offer(jar("e"));
+    assertFalse(jarsToSend.isBatchReady());
+    // A plain drain still takes everything
+    assertEquals(1, jarsToSend.drainTo(sent));
+  }
+
+  private static JarInfo jar(String name) {
+    return new JarInfo(name, "1.0", Collections.emptyMap());
+  }
+}
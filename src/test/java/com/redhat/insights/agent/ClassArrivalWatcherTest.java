@@ -0,0 +1,38 @@
+/* Copyright (C) Red Hat 2026 */
+package com.redhat.insights.agent;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+public class ClassArrivalWatcherTest {
+
+  @Test
+  public void testListenerCalledOnceOnArrival() {
+    ClassArrivalWatcher watcher = new ClassArrivalWatcher();
+    List<ClassLoader> arrivals = new ArrayList<>();
+    watcher.watch("org.example.Watched", arrivals::add);
+    ClassLoader loader = getClass().getClassLoader();
+
+    watcher.noticed("org/example/Other", loader);
+    watcher.noticed(null, loader);
+    assertFalse(watcher.hasArrived("org.example.Watched"));
+    assertTrue(arrivals.isEmpty());
+
+    watcher.noticed("org/example/Watched", loader);
+    watcher.noticed("org/example/Watched", loader);
+    assertTrue(watcher.hasArrived("org.example.Watched"));
+    assertEquals(1, arrivals.size());
+    assertSame(loader, arrivals.get(0));
+  }
+
+  @Test
+  public void testJBossFingerprintDoesNotBlockWhenNotReady() {
+    // Outside JBoss, module.path is never set, so the probe can't finish
+    long start = System.nanoTime();
+    assertEquals(JBossFingerprint.PENDING, AgentSubreport.fingerprintJBoss(Object.class));
+    assertTrue(System.nanoTime() - start < 1_000_000_000L);
+  }
+}
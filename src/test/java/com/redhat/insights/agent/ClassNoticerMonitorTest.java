@@ -0,0 +1,74 @@
+/* Copyright (C) Red Hat 2026 */
+package com.redhat.insights.agent;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.redhat.insights.jars.JarInfo;
+import java.lang.instrument.Instrumentation;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+public class ClassNoticerMonitorTest {
+
+  @Test
+  public void testDeregistersWhenQuietAndReregistersOnSweep() {
+    Instrumentation instrumentation = Mockito.mock(Instrumentation.class);
+    BlockingQueue<JarInfo> jarsToSend = new LinkedBlockingQueue<>();
+    ClassNoticer noticer = new ClassNoticer(jarsToSend);
+    ClassNoticerMonitor monitor =
+        new ClassNoticerMonitor(
+            instrumentation, noticer, Duration.ofSeconds(10), 0, Duration.ofSeconds(1));
+
+    // A new code source part way through the window keeps the noticer registered
+    for (int i = 0; i < ClassNoticerMonitor.SAMPLES_PER_WINDOW - 1; i++) {
+      monitor.tick();
+    }
+    noticer.notice(String.class.getProtectionDomain());
+    noticer.notice(Test.class.getProtectionDomain());
+    monitor.tick();
+    assertTrue(monitor.isRegistered());
+
+    // A full window with nothing new removes it
+    for (int i = 0; i < ClassNoticerMonitor.SAMPLES_PER_WINDOW; i++) {
+      monitor.tick();
+    }
+    assertFalse(monitor.isRegistered());
+    Mockito.verify(instrumentation, Mockito.times(1)).removeTransformer(noticer);
+
+    // Sweeping already-seen classes doesn't bring it back
+    Mockito.when(instrumentation.getAllLoadedClasses()).thenReturn(new Class<?>[] {Test.class});
+    monitor.tick();
+    assertFalse(monitor.isRegistered());
+
+    // A late arrival found by the sweep does
+    Mockito.when(instrumentation.getAllLoadedClasses())
+        .thenReturn(new Class<?>[] {Test.class, Mockito.class});
+    monitor.tick();
+    assertTrue(monitor.isRegistered());
+    Mockito.verify(instrumentation, Mockito.times(1)).addTransformer(noticer);
+    assertEquals(2, jarsToSend.size());
+  }
+
+  @Test
+  public void testOutOfRangeSettingsFallBackToDefaults() {
+    Map<String, String> args = new HashMap<>();
+    args.put("name", "test_app");
+    // Above Long.MAX_VALUE, which an unsigned parse would wrap to a negative number
+    args.put(AgentConfiguration.AGENT_ARG_NOTICER_QUIET_SECS, "18446744073709551615");
+    args.put(AgentConfiguration.AGENT_ARG_NOTICER_QUIET_THRESHOLD, "-1");
+    args.put(AgentConfiguration.AGENT_ARG_NOTICER_SWEEP_SECS, "7");
+    AgentConfiguration config = new AgentConfiguration(args);
+
+    assertEquals(
+        Duration.ofSeconds(AgentConfiguration.DEFAULT_NOTICER_QUIET_SECS),
+        config.getNoticerQuietWindow());
+    assertEquals(
+        AgentConfiguration.DEFAULT_NOTICER_QUIET_THRESHOLD, config.getNoticerQuietThreshold());
+    assertEquals(Duration.ofSeconds(7), config.getNoticerSweepInterval());
+  }
+}
@@ -1,4 +1,4 @@
-/* Copyright (C) Red Hat 2023-2024 */
+/* Copyright (C) Red Hat 2023-2026 */
 package com.redhat.insights.agent; /* Copyright (C) Red Hat 2023 */
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -15,12 +15,34 @@ import com.redhat.insights.logging.InsightsLogger;
 import com.redhat.insights.reports.InsightsReport;
 import java.io.IOException;
 import java.lang.instrument.Instrumentation;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.net.URLConnection;
+import java.net.URLStreamHandler;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.CodeSource;
+import java.security.ProtectionDomain;
+import java.security.cert.Certificate;
 import java.time.Duration;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
+import net.bytebuddy.ByteBuddy;
 import net.bytebuddy.agent.ByteBuddyAgent;
 import org.awaitility.Awaitility;
 import org.junit.jupiter.api.Assertions;
@@ -85,4 +107,161 @@ public class ClassNoticerTest {
     Class<?> clz = Class.forName("org.springframework.boot.loader.JarLauncher");
     assertNotNull(clz);
   }
+
+  @Test
+  public void testBackgroundAnalysis() throws Exception {
+    BlockingQueue<JarInfo> jarsToSend = new LinkedBlockingQueue<>();
+    ClassNoticer noticer = new ClassNoticer(jarsToSend, true);
+
+    // Any class from a jar on the test classpath will do
+    ProtectionDomain domain = Test.class.getProtectionDomain();
+    byte[] bytes = new byte[0];
+    assertSame(bytes, noticer.transform(null, "org/junit/jupiter/api/Test", null, domain, bytes));
+    noticer.transform(null, "org/junit/jupiter/api/Test", null, domain, bytes);
+
+    Awaitility.await().atMost(Duration.ofSeconds(10)).until(() -> jarsToSend.size() == 1);
+    assertTrue(jarsToSend.peek().name().startsWith("junit-jupiter-api"));
+  }
+
+  @Test
+  public void testAnalysisHeldUntilStarted() throws Exception {
+    BlockingQueue<JarInfo> jarsToSend = new LinkedBlockingQueue<>();
+    ClassNoticer noticer = new ClassNoticer(jarsToSend, false, null);
+
+    noticer.notice(Test.class.getProtectionDomain());
+    noticer.notice(Mockito.class.getProtectionDomain());
+    assertEquals(2, noticer.getCodeSourceCount());
+    assertTrue(jarsToSend.isEmpty());
+
+    // Jars seen before the start are analyzed then, and later ones straight away
+    noticer.startAnalysis(new CachingJarAnalyzer());
+    assertEquals(2, jarsToSend.size());
+    noticer.notice(Awaitility.class.getProtectionDomain());
+    assertEquals(3, jarsToSend.size());
+  }
+
+  @Test
+  public void testConcurrentLoadingFromManyJars() throws Exception {
+    final int jarCount = 32;
+    final int classesPerJar = 20;
+    final int threadCount = 16;
+
+    // Jars must not live under java.io.tmpdir, as the analyzer skips temp jars
+    Path dir = Files.createDirectories(Paths.get("target", "stress-jars"));
+    URLClassLoader[] loaders = new URLClassLoader[jarCount];
+    for (int i = 0; i < jarCount; i++) {
+      Path jar = dir.resolve("stress-" + i + ".jar");
+      try (JarOutputStream out = new JarOutputStream(Files.newOutputStream(jar))) {
+        for (int j = 0; j < classesPerJar; j++) {
+          String name = "stress.jar" + i + ".Class" + j;
+          out.putNextEntry(new JarEntry(name.replace('.', '/') + ".class"));
+          out.write(new ByteBuddy().subclass(Object.class).name(name).make().getBytes());
+          out.closeEntry();
+        }
+      }
+      loaders[i] = new URLClassLoader(new URL[] {jar.toUri().toURL()}, null);
+    }
+
+    Instrumentation instrumentation = ByteBuddyAgent.install();
+    BlockingQueue<JarInfo> jarsToSend = new LinkedBlockingQueue<>();
+    ClassNoticer noticer = new ClassNoticer(jarsToSend);
+    instrumentation.addTransformer(noticer);
+    ExecutorService pool = Executors.newFixedThreadPool(threadCount);
+    try {
+      CountDownLatch start = new CountDownLatch(1);
+      List<Future<?>> futures = new ArrayList<>();
+      for (int t = 0; t < threadCount; t++) {
+        final int offset = t;
+        futures.add(
+            pool.submit(
+                () -> {
+                  start.await();
+                  // Every thread walks every jar, starting at a different one
+                  for (int i = 0; i < jarCount; i++) {
+                    int jar = (i + offset) % jarCount;
+                    for (int j = 0; j < classesPerJar; j++) {
+                      Class.forName("stress.jar" + jar + ".Class" + j, false, loaders[jar]);
+                    }
+                  }
+                  return null;
+                }));
+      }
+      start.countDown();
+      for (Future<?> f : futures) {
+        f.get(60, TimeUnit.SECONDS);
+      }
+    } finally {
+      pool.shutdownNow();
+      instrumentation.removeTransformer(noticer);
+    }
+
+    // Other classes may be loaded while the transformer is installed, so only count ours
+    List<String> names = new ArrayList<>();
+    for (JarInfo jarInfo : jarsToSend) {
+      if (jarInfo.name().startsWith("stress-")) {
+        names.add(jarInfo.name());
+      }
+    }
+    assertEquals(jarCount, names.size());
+    assertEquals(jarCount, new HashSet<>(names).size());
+  }
+
+  @Test
+  public void testSeenCodeSourceSkipsUrlLookup() throws Exception {
+    // CodeSource.getLocation() is final, so count how often the location is turned into a string
+    AtomicInteger lookups = new AtomicInteger();
+    URLStreamHandler countingHandler =
+        new URLStreamHandler() {
+          @Override
+          protected URLConnection openConnection(URL u) throws IOException {
+            throw new IOException("Not opened in this test");
+          }
+
+          @Override
+          protected String toExternalForm(URL u) {
+            lookups.incrementAndGet();
+            return super.toExternalForm(u);
+          }
+        };
+    URL location = new URL("file", "", -1, "/tmp/seen-code-source.jar", countingHandler);
+    ProtectionDomain domain =
+        new ProtectionDomain(new CodeSource(location, (Certificate[]) null), null);
+
+    // No analyzer, so the new jar is only held and nothing else looks at its URL
+    BlockingQueue<JarInfo> jarsToSend = new LinkedBlockingQueue<>();
+    ClassNoticer noticer = new ClassNoticer(jarsToSend, false, null);
+    byte[] bytes = new byte[0];
+    for (int i = 0; i < 100; i++) {
+      noticer.transform(null, null, null, domain, bytes);
+    }
+
+    assertEquals(1, lookups.get());
+    assertEquals(1, noticer.getCodeSourceCount());
+  }
+
+  @Test
+  public void testCodeSourceCache() throws Exception {
+    CodeSource codeSource = Test.class.getProtectionDomain().getCodeSource();
+    CodeSource sameLocation = new CodeSource(codeSource.getLocation(), (Certificate[]) null);
+    CodeSourceCache cache = new CodeSourceCache(1);
+
+    assertFalse(cache.contains(codeSource));
+    cache.add(codeSource);
+    assertTrue(cache.contains(codeSource));
+    // Keyed on identity, not equality
+    assertFalse(cache.contains(sameLocation));
+    // Collisions simply evict
+    cache.add(sameLocation);
+    assertFalse(cache.contains(codeSource));
+
+    // The noticer still de-duplicates code sources that miss the cache
+    BlockingQueue<JarInfo> jarsToSend = new LinkedBlockingQueue<>();
+    ClassNoticer noticer = new ClassNoticer(jarsToSend);
+    byte[] bytes = new byte[0];
+    for (int i = 0; i < 100; i++) {
+      noticer.transform(null, null, null, new ProtectionDomain(codeSource, null), bytes);
+      noticer.transform(null, null, null, new ProtectionDomain(sameLocation, null), bytes);
+    }
+    assertEquals(1, jarsToSend.size());
+  }
 }
@@ -0,0 +1,46 @@
+/* Copyright (C) Red Hat 2026 */
+package com.redhat.insights.agent;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.net.URL;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+
+public class ClassPresenceTest {
+
+  @Test
+  public void testProbesWithoutLoading() {
+    AtomicInteger lookups = new AtomicInteger();
+    ClassLoader loader =
+        new ClassLoader(getClass().getClassLoader()) {
+          @Override
+          public URL getResource(String name) {
+            lookups.incrementAndGet();
+            return super.getResource(name);
+          }
+
+          @Override
+          protected Class<?> loadClass(String name, boolean resolve) {
+            throw new AssertionError("Should not load " + name);
+          }
+        };
+    ClassPresence presence = new ClassPresence(loader);
+
+    assertTrue(presence.isPresent("org.junit.jupiter.api.Test"));
+    assertFalse(presence.isPresent("org.example.NotThere"));
+    assertEquals(2, lookups.get());
+
+    // Both answers are cached
+    assertTrue(presence.isPresent("org.junit.jupiter.api.Test"));
+    assertFalse(presence.isPresent("org.example.NotThere"));
+    assertEquals(2, lookups.get());
+  }
+
+  @Test
+  public void testBootstrapLoader() {
+    ClassPresence presence = new ClassPresence(null);
+    assertTrue(presence.isPresent("java.lang.String"));
+    assertFalse(presence.isPresent("org.junit.jupiter.api.Test"));
+  }
+}
@@ -0,0 +1,133 @@
+/* Copyright (C) Red Hat 2026 */
+package com.redhat.insights.agent;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.tomakehurst.wiremock.WireMockServer;
+import com.redhat.insights.jars.JarAnalyzer;
+import com.redhat.insights.jars.JarInfo;
+import com.redhat.insights.jars.JarInfoSubreport;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.zip.GZIPOutputStream;
+import net.bytebuddy.ByteBuddy;
+import org.apache.http.impl.client.HttpClients;
+import org.awaitility.Awaitility;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+public class CompactJarInfoSubreportSerializerTest {
+
+  private static final String SHA512_HEX =
+      "0123456789abcdef0123456789abcdef0123456789abcdef0123456789abcdef"
+          + "fedcba9876543210fedcba9876543210fedcba9876543210fedcba9876543210";
+
+  @Test
+  public void testOnlySha512IsKeptInBase64() throws Exception {
+    List<JarInfo> jars = Arrays.asList(jar("lib.jar", SHA512_HEX), jar("odd.jar", "not-hex"));
+    MemoizedJarInfoSubreport subreport =
+        new MemoizedJarInfoSubreport(
+            AgentLogger.getLogger(), new JarInfoSubreport(AgentLogger.getLogger(), jars), true);
+
+    Map<String, Object> out =
+        new ObjectMapper()
+            .readValue(subreport.serializeReport(), new TypeReference<Map<String, Object>>() {});
+    assertEquals(CompactJarInfoSubreportSerializer.ENCODING, out.get("encoding"));
+    List<Map<String, Object>> written = (List<Map<String, Object>>) out.get("jars");
+    assertEquals(2, written.size());
+
+    Map<String, Object> attributes = (Map<String, Object>) written.get(0).get("attributes");
+    assertFalse(attributes.containsKey(JarAnalyzer.SHA1_CHECKSUM_KEY));
+    assertFalse(attributes.containsKey(JarAnalyzer.SHA256_CHECKSUM_KEY));
+    // Under its own key, so it can't be taken for hex
+    assertFalse(attributes.containsKey(JarAnalyzer.SHA512_CHECKSUM_KEY));
+    String sha512 = (String) attributes.get(CompactJarInfoSubreportSerializer.SHA512_BASE64_KEY);
+    assertEquals(86, sha512.length());
+    assertArrayEquals(
+        CompactJarInfoSubreportSerializer.decodeHex(SHA512_HEX),
+        Base64.getDecoder().decode(sha512));
+    // Other attributes are left as they are
+    assertEquals("lib", attributes.get("Implementation-Title"));
+
+    // A checksum that isn't hex can't be told apart from base64, so is left out
+    Map<String, Object> odd = (Map<String, Object>) written.get(1).get("attributes");
+    assertFalse(odd.containsKey(JarAnalyzer.SHA512_CHECKSUM_KEY));
+    assertFalse(odd.containsKey(CompactJarInfoSubreportSerializer.SHA512_BASE64_KEY));
+  }
+
+  @Test
+  public void testCompressedPayloadIsSmallerForRealJars() throws Exception {
+    // The jars of this test's own dependencies, as a stand-in for an application classpath
+    CachingJarAnalyzer analyzer = new CachingJarAnalyzer();
+    List<JarInfo> jars = new ArrayList<>();
+    for (Class<?> clazz :
+        Arrays.asList(
+            ObjectMapper.class,
+            TypeReference.class,
+            Test.class,
+            Mockito.class,
+            ByteBuddy.class,
+            Awaitility.class,
+            WireMockServer.class,
+            HttpClients.class)) {
+      URL location = clazz.getProtectionDomain().getCodeSource().getLocation();
+      Optional<JarInfo> jarInfo = analyzer.process(location);
+      jarInfo.ifPresent(jars::add);
+    }
+    assertTrue(jars.size() >= 6, "found " + jars.size() + " jars");
+    JarInfoSubreport plain = new JarInfoSubreport(AgentLogger.getLogger(), jars);
+    byte[] plainJson = plain.serializeReport().getBytes(StandardCharsets.UTF_8);
+    byte[] compactJson =
+        new MemoizedJarInfoSubreport(AgentLogger.getLogger(), plain, true)
+            .serializeReport()
+            .getBytes(StandardCharsets.UTF_8);
+
+    // Each jar loses a hex SHA-1 and SHA-256, and its SHA-512 shrinks from 128 to 86 characters
+    assertTrue(
+        compactJson.length <= plainJson.length - 150 * jars.size(),
+        compactJson.length + " vs " + plainJson.length);
+    // The SHA-1 and SHA-256 are 52 random bytes per jar, which gzip can't squeeze out
+    int plainGzipped = gzip(plainJson).length;
+    int compactGzipped = gzip(compactJson).length;
+    assertTrue(
+        compactGzipped <= plainGzipped - 40 * jars.size(),
+        compactGzipped + " vs " + plainGzipped);
+  }
+
+  @Test
+  public void testPlainEncodingMatchesLibrary() throws Exception {
+    List<JarInfo> jars = Arrays.asList(jar("lib.jar", SHA512_HEX), jar("other.jar", "00ff"));
+    JarInfoSubreport plain = new JarInfoSubreport(AgentLogger.getLogger(), jars);
+    MemoizedJarInfoSubreport memoized =
+        new MemoizedJarInfoSubreport(AgentLogger.getLogger(), plain, false);
+    assertEquals(plain.serializeReport(), memoized.serializeReport());
+  }
+
+  private static byte[] gzip(byte[] bytes) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+      gzip.write(bytes);
+    }
+    return out.toByteArray();
+  }
+
+  private static JarInfo jar(String name, String sha512) {
+    Map<String, String> attributes = new HashMap<>();
+    attributes.put(JarAnalyzer.SHA1_CHECKSUM_KEY, "sha1-of-" + name);
+    attributes.put(JarAnalyzer.SHA256_CHECKSUM_KEY, "sha256-of-" + name);
+    attributes.put(JarAnalyzer.SHA512_CHECKSUM_KEY, sha512);
+    attributes.put("Implementation-Title", name.substring(0, name.indexOf('.')));
+    return new JarInfo(name, "1.0", attributes);
+  }
+}
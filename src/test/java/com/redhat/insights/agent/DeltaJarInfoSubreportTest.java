@@ -0,0 +1,176 @@
+/* Copyright (C) Red Hat 2026 */
+package com.redhat.insights.agent;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.redhat.insights.jars.JarAnalyzer;
+import com.redhat.insights.jars.JarInfo;
+import com.redhat.insights.jars.JarInfoSubreport;
+import com.redhat.insights.reports.InsightsReport;
+import com.redhat.insights.reports.InsightsSubreport;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+public class DeltaJarInfoSubreportTest {
+
+  @Test
+  public void testFullUntilAcceptedThenDelta() throws Exception {
+    List<JarInfo> jars = new ArrayList<>(Arrays.asList(jar("a"), jar("b"), jar("c")));
+    AcceptedJars acceptedJars = new AcceptedJars();
+    DeltaJarInfoSubreport subreport =
+        new DeltaJarInfoSubreport(
+            AgentLogger.getLogger(),
+            new JarInfoSubreport(AgentLogger.getLogger(), jars),
+            acceptedJars);
+
+    subreport.generateReport();
+    Map<String, Object> full = serialize(subreport);
+    assertEquals(false, full.get("delta"));
+    assertEquals(3, ((List<?>) full.get("jars")).size());
+    assertEquals(3, full.get("total"));
+    String fullDigest = (String) full.get("digest");
+
+    acceptedJars.accepted(reportOf(subreport));
+    jars.remove(0);
+    jars.add(jar("d"));
+    subreport.generateReport();
+    Map<String, Object> delta = serialize(subreport);
+    assertEquals(true, delta.get("delta"));
+    List<Map<String, Object>> added = (List<Map<String, Object>>) delta.get("jars");
+    assertEquals(1, added.size());
+    assertEquals("d.jar", added.get(0).get("name"));
+    assertEquals(Collections.singletonList(sha512("a")), delta.get("removed"));
+    assertEquals(3, delta.get("total"));
+    assertEquals(fullDigest, delta.get("baseline_digest"));
+    assertNotEquals(fullDigest, delta.get("digest"));
+  }
+
+  @Test
+  public void testUpdatedJarsAreNotRemovedByTheNextFullReport() throws Exception {
+    List<JarInfo> classpath = new ArrayList<>(Arrays.asList(jar("a"), jar("b")));
+    AcceptedJars acceptedJars = new AcceptedJars();
+    DeltaJarInfoSubreport subreport =
+        new DeltaJarInfoSubreport(
+            AgentLogger.getLogger(),
+            new JarInfoSubreport(AgentLogger.getLogger(), classpath),
+            acceptedJars);
+    subreport.generateReport();
+    acceptedJars.accepted(reportOf(subreport));
+
+    // A jar noticed loading, which isn't on the classpath
+    acceptedJars.accepted(
+        reportOf(
+            new JarInfoSubreport(AgentLogger.getLogger(), Collections.singletonList(jar("c")))));
+    assertEquals(3, acceptedJars.snapshot().size());
+
+    subreport.generateReport();
+    Map<String, Object> delta = serialize(subreport);
+    assertEquals(true, delta.get("delta"));
+    assertTrue(((List<?>) delta.get("jars")).isEmpty());
+    assertEquals(Collections.emptyList(), delta.get("removed"));
+    // Nothing changed, so the server's set is the same afterwards
+    assertEquals(delta.get("baseline_digest"), delta.get("digest"));
+    acceptedJars.accepted(reportOf(subreport));
+    assertTrue(acceptedJars.snapshot().contains(sha512("c")));
+
+    // Only classpath jars that have gone are removed
+    classpath.remove(1);
+    subreport.generateReport();
+    delta = serialize(subreport);
+    assertEquals(Collections.singletonList(sha512("b")), delta.get("removed"));
+    assertEquals(
+        AcceptedJars.digest(Arrays.asList(sha512("a"), sha512("c"))), delta.get("digest"));
+    acceptedJars.accepted(reportOf(subreport));
+    assertEquals(
+        new HashSet<>(Arrays.asList(sha512("a"), sha512("c"))), acceptedJars.snapshot());
+  }
+
+  @Test
+  public void testCompactDelta() throws Exception {
+    List<JarInfo> jars = new ArrayList<>(Arrays.asList(hexJar("a"), hexJar("b")));
+    AcceptedJars acceptedJars = new AcceptedJars();
+    DeltaJarInfoSubreport subreport =
+        new DeltaJarInfoSubreport(
+            AgentLogger.getLogger(),
+            new JarInfoSubreport(AgentLogger.getLogger(), jars),
+            acceptedJars,
+            true);
+    subreport.generateReport();
+    acceptedJars.accepted(reportOf(subreport));
+    jars.remove(1);
+    jars.add(hexJar("c"));
+    subreport.generateReport();
+
+    Map<String, Object> delta = serialize(subreport);
+    assertEquals(CompactJarInfoSubreportSerializer.ENCODING, delta.get("encoding"));
+    // Added jars carry base64 under its own key, while removed ones stay hex
+    List<Map<String, Object>> added = (List<Map<String, Object>>) delta.get("jars");
+    Map<String, Object> attributes = (Map<String, Object>) added.get(0).get("attributes");
+    assertFalse(attributes.containsKey(JarAnalyzer.SHA512_CHECKSUM_KEY));
+    assertArrayEquals(
+        CompactJarInfoSubreportSerializer.decodeHex(hexSha512("c")),
+        Base64.getDecoder()
+            .decode((String) attributes.get(CompactJarInfoSubreportSerializer.SHA512_BASE64_KEY)));
+    assertEquals(Collections.singletonList(hexSha512("b")), delta.get("removed"));
+    assertEquals(
+        AcceptedJars.digest(Arrays.asList(hexSha512("a"), hexSha512("c"))), delta.get("digest"));
+  }
+
+  @Test
+  public void testDigestIgnoresOrder() {
+    assertEquals(
+        AcceptedJars.digest(Arrays.asList("x", "y", "z")),
+        AcceptedJars.digest(Arrays.asList("z", "x", "y")));
+    assertNotEquals(
+        AcceptedJars.digest(Arrays.asList("x", "y")), AcceptedJars.digest(Arrays.asList("x")));
+  }
+
+  private static Map<String, Object> serialize(JarInfoSubreport subreport) throws Exception {
+    return new ObjectMapper()
+        .readValue(subreport.serializeReport(), new TypeReference<Map<String, Object>>() {});
+  }
+
+  private static InsightsReport reportOf(InsightsSubreport subreport) {
+    InsightsReport report = Mockito.mock(InsightsReport.class);
+    Mockito.when(report.getSubreports()).thenReturn(Collections.singletonMap("jars", subreport));
+    return report;
+  }
+
+  private static JarInfo jar(String name) {
+    Map<String, String> attributes = new HashMap<>();
+    attributes.put(JarAnalyzer.SHA512_CHECKSUM_KEY, sha512(name));
+    return new JarInfo(name + ".jar", "1.0", attributes);
+  }
+
+  private static JarInfo hexJar(String name) throws NoSuchAlgorithmException {
+    Map<String, String> attributes = new HashMap<>();
+    attributes.put(JarAnalyzer.SHA512_CHECKSUM_KEY, hexSha512(name));
+    return new JarInfo(name + ".jar", "1.0", attributes);
+  }
+
+  private static String hexSha512(String name) throws NoSuchAlgorithmException {
+    StringBuilder out = new StringBuilder();
+    for (byte b :
+        MessageDigest.getInstance("SHA-512").digest(name.getBytes(StandardCharsets.UTF_8))) {
+      out.append(String.format("%02x", b));
+    }
+    return out.toString();
+  }
+
+  private static String sha512(String name) {
+    return name + "-sha512";
+  }
+}
@@ -0,0 +1,113 @@
+/* Copyright (C) Red Hat 2026 */
+package com.redhat.insights.agent;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+public class HsPerfDataTest {
+
+  // Captured from: java -Xmx64m -XX:+UseParallelGC -Dfixture=true Sleep arg1, after a System.gc()
+  private static final Path FIXTURE = Paths.get("src/test/resources/hsperfdata/jdk8-parallel-gc");
+
+  @Test
+  public void testFixture() throws Exception {
+    HsPerfData data = HsPerfData.read(FIXTURE);
+
+    assertTrue(data.isAccessible());
+    assertEquals("25.392-b08", data.getVmVersion().get());
+    assertEquals("1.8.0_392", data.getJavaVersion().get());
+    assertEquals("-Xmx64m -XX:+UseParallelGC -Dfixture=true", data.getVmArgs().get());
+    assertEquals("", data.getVmFlags().get());
+    assertEquals("Sleep arg1", data.getJavaCommand().get());
+
+    assertEquals(22020096L + 45088768L, data.getHeapMaxCapacity());
+    assertEquals(22020096L + 45088768L, data.getHeapCapacity());
+    assertEquals(330184L + 10265616L, data.getHeapUsed());
+
+    List<HsPerfData.Collector> collectors = data.getCollectors();
+    assertEquals(2, collectors.size());
+    assertEquals("PSScavenge", collectors.get(0).getName());
+    assertEquals(1, collectors.get(0).getInvocations());
+    assertEquals(6, collectors.get(0).getTimeMillis());
+    assertEquals("PSParallelCompact", collectors.get(1).getName());
+    assertEquals(1, collectors.get(1).getInvocations());
+    assertEquals(5, collectors.get(1).getTimeMillis());
+
+    assertEquals(1_000_000_000L, data.getLong(HsPerfData.TICK_FREQUENCY).getAsLong());
+    assertFalse(data.getLong(HsPerfData.VM_VERSION).isPresent());
+  }
+
+  @Test
+  public void testOwnJvm() throws Exception {
+    long pid = Long.parseLong(ManagementFactory.getRuntimeMXBean().getName().split("@")[0]);
+    Path file = AttachWatcher.defaultPerfDataDir().resolve(String.valueOf(pid));
+    assumeTrue(Files.exists(file), "Test JVM has no hsperfdata file");
+
+    HsPerfData data = HsPerfData.read(pid);
+    assertEquals(System.getProperty("java.vm.version"), data.getVmVersion().get());
+    assertEquals(System.getProperty("java.vm.name"), data.getVmName().get());
+    assertTrue(data.getHeapMaxCapacity() > 0);
+    assertFalse(data.getCollectors().isEmpty());
+  }
+
+  @Test
+  public void testNotHsPerfData() {
+    ByteBuffer buffer = ByteBuffer.allocate(64);
+    buffer.putInt(0, 0x504b0304);
+    IOException e = assertThrows(IOException.class, () -> HsPerfData.parse(buffer));
+    assertEquals("Not an hsperfdata file", e.getMessage());
+  }
+
+  @Test
+  public void testTruncated() throws Exception {
+    byte[] bytes = Files.readAllBytes(FIXTURE);
+    ByteBuffer buffer = ByteBuffer.wrap(bytes, 0, 4096).slice();
+    assertThrows(IOException.class, () -> HsPerfData.parse(buffer));
+  }
+
+  @Test
+  public void testCorruptEntryLength() throws Exception {
+    ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(FIXTURE));
+    ByteOrder order = buffer.get(4) == 1 ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN;
+    int entryOffset = buffer.order(order).getInt(24);
+    buffer.putInt(entryOffset, 0);
+    assertThrows(IOException.class, () -> HsPerfData.parse(buffer));
+  }
+
+  @Test
+  public void testCorruptOffsets() throws Exception {
+    byte[] bytes = Files.readAllBytes(FIXTURE);
+    ByteOrder order = bytes[4] == 1 ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN;
+    int entryOffset = ByteBuffer.wrap(bytes).order(order).getInt(24);
+    // Name and data offsets that point outside the entry, or overflow when added to its position
+    for (int field : new int[] {4, 16}) {
+      for (int offset : new int[] {Integer.MAX_VALUE, Integer.MIN_VALUE, -1, 0}) {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes.clone()).order(order);
+        buffer.putInt(entryOffset + field, offset);
+        assertThrows(IOException.class, () -> HsPerfData.parse(buffer), "offset " + offset);
+      }
+    }
+  }
+
+  @Test
+  public void testCorruptEntryCount() throws Exception {
+    byte[] bytes = Files.readAllBytes(FIXTURE);
+    ByteOrder order = bytes[4] == 1 ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN;
+    // Negative, overflowing when doubled, and more than the file could hold
+    for (int count : new int[] {-1, Integer.MIN_VALUE, Integer.MAX_VALUE, bytes.length}) {
+      ByteBuffer buffer = ByteBuffer.wrap(bytes.clone()).order(order);
+      buffer.putInt(28, count);
+      assertThrows(IOException.class, () -> HsPerfData.parse(buffer), "count " + count);
+    }
+  }
+}
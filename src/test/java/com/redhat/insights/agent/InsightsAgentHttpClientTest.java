@@ -1,7 +1,9 @@
-/* Copyright (C) Red Hat 2024-2025 */
+/* Copyright (C) Red Hat 2024-2026 */
 package com.redhat.insights.agent;
 
 import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.equalTo;
+import static com.github.tomakehurst.wiremock.client.WireMock.matching;
 import static com.github.tomakehurst.wiremock.client.WireMock.post;
 import static com.github.tomakehurst.wiremock.client.WireMock.postRequestedFor;
 import static com.github.tomakehurst.wiremock.client.WireMock.stubFor;
@@ -9,7 +11,11 @@ import static com.github.tomakehurst.wiremock.client.WireMock.urlPathEqualTo;
 import static com.github.tomakehurst.wiremock.client.WireMock.verify;
 import static com.redhat.insights.InsightsErrorCode.ERROR_SSL_CREATING_CONTEXT;
 import static com.redhat.insights.agent.AgentMain.parseArgs;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
 
@@ -18,11 +24,20 @@ import com.github.tomakehurst.wiremock.junit5.WireMockTest;
 import com.redhat.insights.Filtering;
 import com.redhat.insights.InsightsException;
 import com.redhat.insights.config.InsightsConfiguration;
+import com.redhat.insights.http.InsightsHttpClient;
 import com.redhat.insights.reports.InsightsReport;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.net.URI;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
 import org.apache.http.Header;
 import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.ContentType;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.ssl.SSLContexts;
 import org.junit.jupiter.api.Test;
 
 @WireMockTest
@@ -71,6 +86,58 @@ public class InsightsAgentHttpClientTest {
     verify(1, postRequestedFor(urlPathEqualTo(InsightsConfiguration.DEFAULT_UPLOAD_URI)));
   }
 
+  @Test
+  void reportIsBufferedUnlessStreamingIsEnabled(WireMockRuntimeInfo wmri) {
+    stubFor(post(InsightsConfiguration.DEFAULT_UPLOAD_URI).willReturn(aResponse().withStatus(202)));
+    for (boolean stream : new boolean[] {false, true}) {
+      Optional<AgentConfiguration> oConfig =
+          parseArgs(
+              "name=foo;token=fubar;stream_upload="
+                  + stream
+                  + ";base_url="
+                  + wmri.getHttpBaseUrl());
+      final InsightsReport report = AgentBasicReport.of(oConfig.get());
+      report.generateReport(Filtering.DEFAULT);
+      InsightsAgentHttpClient client = new InsightsAgentHttpClient(oConfig.get());
+      client.sendInsightsReport("foo", report);
+      client.close();
+    }
+    verify(
+        1,
+        postRequestedFor(urlPathEqualTo(InsightsConfiguration.DEFAULT_UPLOAD_URI))
+            .withHeader("Content-Length", matching("[0-9]+"))
+            .withoutHeader("Transfer-Encoding"));
+    verify(
+        1,
+        postRequestedFor(urlPathEqualTo(InsightsConfiguration.DEFAULT_UPLOAD_URI))
+            .withHeader("Transfer-Encoding", equalTo("chunked")));
+  }
+
+  @Test
+  void acceptedReportIsRememberedForDeltas(WireMockRuntimeInfo wmri) {
+    Optional<AgentConfiguration> oConfig =
+        parseArgs("name=foo;token=fubar;delta_reports=true;base_url=" + wmri.getHttpBaseUrl());
+    AcceptedJars acceptedJars = new AcceptedJars();
+    final InsightsReport report =
+        AgentBasicReport.of(oConfig.get(), new CachingJarAnalyzer(), acceptedJars);
+    report.generateReport(Filtering.DEFAULT);
+    InsightsAgentHttpClient client = new InsightsAgentHttpClient(oConfig.get(), acceptedJars);
+
+    // Rejected, so nothing is known to the server yet
+    stubFor(post(InsightsConfiguration.DEFAULT_UPLOAD_URI).willReturn(aResponse().withStatus(413)));
+    try {
+      client.sendInsightsReport("foo", report);
+      fail();
+    } catch (InsightsException __) {
+      // Expected
+    }
+    assertTrue(acceptedJars.snapshot().isEmpty());
+
+    stubFor(post(InsightsConfiguration.DEFAULT_UPLOAD_URI).willReturn(aResponse().withStatus(202)));
+    client.sendInsightsReport("foo", report);
+    assertFalse(acceptedJars.snapshot().isEmpty());
+  }
+
   @Test
   void sendInsightsReportAuthError(WireMockRuntimeInfo wmri) {
     stubFor(post(InsightsConfiguration.DEFAULT_UPLOAD_URI).willReturn(aResponse().withStatus(401)));
@@ -87,6 +154,69 @@ public class InsightsAgentHttpClientTest {
     }
   }
 
+  @Test
+  void sendInsightsReportReusesClient(WireMockRuntimeInfo wmri) {
+    stubFor(post(InsightsConfiguration.DEFAULT_UPLOAD_URI).willReturn(aResponse().withStatus(202)));
+    Optional<AgentConfiguration> oConfig =
+        parseArgs("name=foo;token=fubar;base_url=" + wmri.getHttpBaseUrl());
+    final InsightsReport report = AgentBasicReport.of(oConfig.get());
+    report.generateReport(Filtering.DEFAULT);
+    InsightsAgentHttpClient client = new InsightsAgentHttpClient(oConfig.get());
+    client.sendInsightsReport("foo", report);
+    CloseableHttpClient first = client.getClient();
+    client.sendInsightsReport("foo", report);
+    assertSame(first, client.getClient());
+    verify(2, postRequestedFor(urlPathEqualTo(InsightsConfiguration.DEFAULT_UPLOAD_URI)));
+
+    // Closing drops the pooled client, and the next send builds a fresh one
+    client.close();
+    client.sendInsightsReport("foo", report);
+    assertNotSame(first, client.getClient());
+    verify(3, postRequestedFor(urlPathEqualTo(InsightsConfiguration.DEFAULT_UPLOAD_URI)));
+    client.close();
+  }
+
+  @Test
+  void mtlsClientIsReusedWhenSupplierBuildsNewContexts() {
+    Optional<AgentConfiguration> oConfig = parseArgs("name=foo");
+    AtomicInteger contextsBuilt = new AtomicInteger();
+    InsightsAgentHttpClient client =
+        new InsightsAgentHttpClient(
+            oConfig.get(),
+            () -> {
+              contextsBuilt.incrementAndGet();
+              return SSLContexts.createDefault();
+            });
+    CloseableHttpClient first = client.getClient();
+    assertSame(first, client.getClient());
+    assertEquals(1, contextsBuilt.get());
+    client.close();
+  }
+
+  @Test
+  void gzipReportBodyMatchesSerializedReport() throws IOException {
+    Optional<AgentConfiguration> oConfig = parseArgs("name=foo");
+    final InsightsReport report = AgentBasicReport.of(oConfig.get());
+    report.generateReport(Filtering.DEFAULT);
+    GzipReportBody body =
+        new GzipReportBody(report, ContentType.create(InsightsHttpClient.GENERAL_MIME_TYPE), "foo");
+
+    // Written twice, as it would be on a retry
+    for (int i = 0; i < 2; i++) {
+      ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+      body.writeTo(compressed);
+      ByteArrayOutputStream json = new ByteArrayOutputStream();
+      try (GZIPInputStream in =
+          new GZIPInputStream(new ByteArrayInputStream(compressed.toByteArray()))) {
+        byte[] buffer = new byte[8192];
+        for (int n; (n = in.read(buffer)) != -1; ) {
+          json.write(buffer, 0, n);
+        }
+      }
+      assertArrayEquals(report.serializeRaw(), json.toByteArray());
+    }
+  }
+
   @Test
   void assembleURI() {
     Optional<AgentConfiguration> oConfig = parseArgs("name=foo");
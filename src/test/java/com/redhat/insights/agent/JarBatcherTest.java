@@ -0,0 +1,58 @@
+/* Copyright (C) Red Hat 2026 */
+package com.redhat.insights.agent;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.redhat.insights.jars.JarInfo;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import org.awaitility.Awaitility;
+import org.junit.jupiter.api.Test;
+
+public class JarBatcherTest {
+
+  @Test
+  public void testOneBatchHandedOverAtATime() {
+    AtomicLong now = new AtomicLong(1);
+    BoundedJarQueue waiting = new BoundedJarQueue(10, 2, Duration.ofSeconds(60), now::get);
+    JarBatcher batcher = new JarBatcher(waiting, Duration.ofHours(1));
+
+    waiting.offer(jar("a"));
+    assertFalse(batcher.flush());
+    assertTrue(batcher.getOutbox().isEmpty());
+
+    waiting.offer(jar("b"));
+    waiting.offer(jar("c"));
+    assertTrue(batcher.flush());
+    assertEquals(2, batcher.getOutbox().size());
+    // Nothing more until the controller has taken the batch, and the leftover has lingered
+    assertFalse(batcher.flush());
+    List<JarInfo> sent = new ArrayList<>();
+    batcher.getOutbox().drainTo(sent);
+    assertFalse(batcher.flush());
+    now.addAndGet(Duration.ofSeconds(60).toNanos());
+    assertTrue(batcher.flush());
+    assertEquals(1, batcher.getOutbox().size());
+  }
+
+  @Test
+  public void testFullBatchIsHandedOverStraightAway() {
+    BoundedJarQueue waiting = new BoundedJarQueue(10, 2, Duration.ofHours(1));
+    JarBatcher batcher = new JarBatcher(waiting, Duration.ofHours(1));
+    batcher.start();
+
+    waiting.offer(jar("a"));
+    waiting.offer(jar("b"));
+    Awaitility.await()
+        .atMost(Duration.ofSeconds(10))
+        .until(() -> batcher.getOutbox().size() == 2);
+    assertTrue(waiting.isEmpty());
+  }
+
+  private static JarInfo jar(String name) {
+    return new JarInfo(name, "1.0", Collections.emptyMap());
+  }
+}
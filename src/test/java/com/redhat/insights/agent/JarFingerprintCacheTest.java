@@ -0,0 +1,137 @@
+/* Copyright (C) Red Hat 2026 */
+package com.redhat.insights.agent;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.redhat.insights.jars.JarAnalyzer;
+import com.redhat.insights.jars.JarInfo;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Optional;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+
+public class JarFingerprintCacheTest {
+
+  // Jars must not live under java.io.tmpdir, as the analyzer skips temp jars
+  private static final Path DIR = Paths.get("target", "fingerprint-cache-test");
+
+  @Test
+  public void testCacheSurvivesRestart() throws Exception {
+    Path cacheDir = Files.createDirectories(DIR.resolve("restart"));
+    Files.deleteIfExists(cacheDir.resolve(JarFingerprintCache.CACHE_FILE_NAME));
+    Path jar = writeJar(cacheDir.resolve("restart.jar"), "1.0");
+
+    CachingJarAnalyzer first = new CachingJarAnalyzer(JarFingerprintCache.load(cacheDir));
+    JarInfo original = first.process(jar.toUri().toURL()).get();
+    first.saveCache();
+
+    // Same size and modification time, but different contents. A cache hit never opens the jar,
+    // so the restarted analyzer should still report the original checksum.
+    long lastModified = Files.getLastModifiedTime(jar).toMillis();
+    Files.write(jar, new byte[(int) Files.size(jar)]);
+    assertTrue(jar.toFile().setLastModified(lastModified));
+
+    JarFingerprintCache reloaded = JarFingerprintCache.load(cacheDir);
+    assertEquals(1, reloaded.size());
+    JarInfo cached = new CachingJarAnalyzer(reloaded).process(jar.toUri().toURL()).get();
+    assertEquals(original.name(), cached.name());
+    assertEquals(original.version(), cached.version());
+    assertEquals(
+        original.attributes().get(JarAnalyzer.SHA512_CHECKSUM_KEY),
+        cached.attributes().get(JarAnalyzer.SHA512_CHECKSUM_KEY));
+  }
+
+  @Test
+  public void testChangedJarIsReanalyzed() throws Exception {
+    Path cacheDir = Files.createDirectories(DIR.resolve("changed"));
+    Files.deleteIfExists(cacheDir.resolve(JarFingerprintCache.CACHE_FILE_NAME));
+    Path jar = writeJar(cacheDir.resolve("changed.jar"), "1.0");
+
+    CachingJarAnalyzer analyzer = new CachingJarAnalyzer(JarFingerprintCache.load(cacheDir));
+    JarInfo before = analyzer.process(jar.toUri().toURL()).get();
+    writeJar(jar, "2.0-SNAPSHOT");
+    assertTrue(jar.toFile().setLastModified(System.currentTimeMillis() + 10_000));
+    JarInfo after = analyzer.process(jar.toUri().toURL()).get();
+
+    assertEquals("1.0", before.version());
+    assertEquals("2.0-SNAPSHOT", after.version());
+  }
+
+  @Test
+  public void testCorruptCacheIsIgnored() throws Exception {
+    Path cacheDir = Files.createDirectories(DIR.resolve("corrupt"));
+    Files.write(cacheDir.resolve(JarFingerprintCache.CACHE_FILE_NAME), new byte[] {1, 2, 3});
+
+    JarFingerprintCache cache = JarFingerprintCache.load(cacheDir);
+    assertEquals(0, cache.size());
+    assertEquals(Optional.empty(), cache.get("anything", 0, 0));
+  }
+
+  @Test
+  public void testOversizedEntryIsNotCached() throws Exception {
+    Path cacheDir = Files.createDirectories(DIR.resolve("oversized"));
+    Files.deleteIfExists(cacheDir.resolve(JarFingerprintCache.CACHE_FILE_NAME));
+    StringBuilder huge = new StringBuilder();
+    for (int i = 0; i < 70_000; i++) {
+      huge.append('x');
+    }
+
+    JarFingerprintCache cache = JarFingerprintCache.load(cacheDir);
+    cache.put("small.jar", 1, 1, new JarInfo("small", "1.0", new HashMap<>()));
+    cache.put(
+        "huge.jar",
+        1,
+        1,
+        new JarInfo("huge", "1.0", Collections.singletonMap("Description", huge.toString())));
+    assertEquals(1, cache.size());
+    cache.save();
+
+    assertEquals(1, JarFingerprintCache.load(cacheDir).size());
+  }
+
+  @Test
+  public void testFailedSaveIsRetried() throws Exception {
+    Path parent = DIR.resolve("retry");
+    Path cacheDir = parent.resolve("cache");
+    Files.createDirectories(DIR);
+    deleteRecursively(parent);
+    // A file where the cache directory's parent should be, so the first save fails
+    Files.write(parent, new byte[0]);
+
+    JarFingerprintCache cache = JarFingerprintCache.load(cacheDir);
+    cache.put("retry.jar", 1, 1, new JarInfo("retry", "1.0", new HashMap<>()));
+    cache.save();
+    assertFalse(Files.exists(cacheDir.resolve(JarFingerprintCache.CACHE_FILE_NAME)));
+
+    Files.delete(parent);
+    cache.save();
+    assertEquals(1, JarFingerprintCache.load(cacheDir).size());
+  }
+
+  private static void deleteRecursively(Path path) throws IOException {
+    if (Files.isDirectory(path)) {
+      try (Stream<Path> paths = Files.walk(path)) {
+        paths.sorted(Collections.reverseOrder()).forEach(p -> p.toFile().delete());
+      }
+    } else {
+      Files.deleteIfExists(path);
+    }
+  }
+
+  private static Path writeJar(Path jar, String version) throws IOException {
+    Manifest manifest = new Manifest();
+    manifest.getMainAttributes().putValue("Manifest-Version", "1.0");
+    manifest.getMainAttributes().putValue("Implementation-Version", version);
+    try (JarOutputStream out = new JarOutputStream(Files.newOutputStream(jar), manifest)) {
+      // Manifest only
+    }
+    return jar;
+  }
+}
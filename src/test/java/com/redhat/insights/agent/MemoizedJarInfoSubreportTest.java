@@ -0,0 +1,66 @@
+/* Copyright (C) Red Hat 2026 */
+package com.redhat.insights.agent;
+
+import static com.redhat.insights.agent.AgentMain.parseArgs;
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.redhat.insights.agent.doubles.NoopInsightsLogger;
+import com.redhat.insights.jars.JarInfo;
+import com.redhat.insights.jars.JarInfoSubreport;
+import com.redhat.insights.reports.InsightsSubreport;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+public class MemoizedJarInfoSubreportTest {
+
+  @Test
+  public void testGeneratesOncePerCycle() throws Exception {
+    JarInfoSubreport delegate =
+        Mockito.spy(
+            new JarInfoSubreport(
+                new NoopInsightsLogger(),
+                Collections.singletonList(new JarInfo("foo.jar", "1.0", Collections.emptyMap()))));
+    MemoizedJarInfoSubreport jarsReport =
+        new MemoizedJarInfoSubreport(new NoopInsightsLogger(), delegate);
+    InsightsSubreport details = AgentSubreport.of(jarsReport, parseArgs("name=foo").get());
+
+    // Both subreports generate, from many threads at once
+    int threads = 8;
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try {
+      CountDownLatch start = new CountDownLatch(1);
+      List<Future<?>> results = new ArrayList<>();
+      for (int i = 0; i < threads; i++) {
+        InsightsSubreport subreport = i % 2 == 0 ? jarsReport : details;
+        results.add(
+            executor.submit(
+                () -> {
+                  start.await();
+                  subreport.generateReport();
+                  return null;
+                }));
+      }
+      start.countDown();
+      for (Future<?> result : results) {
+        result.get();
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+    Mockito.verify(delegate, Mockito.times(1)).generateReport();
+    assertEquals(1, jarsReport.getJarInfos().size());
+
+    // The next cycle generates again, once
+    jarsReport.reset();
+    details.generateReport();
+    jarsReport.generateReport();
+    Mockito.verify(delegate, Mockito.times(2)).generateReport();
+  }
+}
@@ -0,0 +1,121 @@
+/* Copyright (C) Red Hat 2026 */
+package com.redhat.insights.agent;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import net.bytebuddy.ByteBuddy;
+import net.bytebuddy.dynamic.loading.ClassLoadingStrategy;
+import org.junit.jupiter.api.Test;
+
+public class WorkloadFingerprintsTest {
+
+  @Test
+  public void testAllMatchesReportedInPriorityOrder() {
+    WorkloadFingerprints fingerprints =
+        new WorkloadFingerprints(
+            Arrays.asList(
+                fingerprint("org.junit.jupiter.api.Test", 50, "JUnit"),
+                fingerprint("org.example.Missing", 1, "Missing"),
+                fingerprint("java.lang.String", 5, "JDK"),
+                fingerprint("java.lang.Object", 60, "JDK")),
+            new ClassArrivalWatcher());
+
+    List<String> workloads = fingerprints.identifyAll();
+    assertEquals(Arrays.asList("JDK", "JUnit"), workloads);
+    assertEquals("Possibly: JDK or JUnit", WorkloadFingerprints.describe(workloads));
+    assertEquals("JDK", WorkloadFingerprints.describe(Collections.singletonList("JDK")));
+    assertEquals("", WorkloadFingerprints.describe(Collections.emptyList()));
+  }
+
+  @Test
+  public void testObservedProbeResolvedFromItsLoader() {
+    // Only loadable from its own loader, so Class.forName() alone wouldn't find it
+    Class<?> hidden =
+        new ByteBuddy()
+            .subclass(Object.class)
+            .name("org.example.HiddenProbe")
+            .make()
+            .load(getClass().getClassLoader(), ClassLoadingStrategy.Default.WRAPPER)
+            .getLoaded();
+    ClassArrivalWatcher watcher = new ClassArrivalWatcher();
+    WorkloadFingerprints fingerprints =
+        new WorkloadFingerprints(
+            Collections.singletonList(fingerprint("org.example.HiddenProbe", 1, "Hidden")),
+            watcher);
+    fingerprints.watchProbes();
+    assertTrue(fingerprints.identifyAll().isEmpty());
+
+    watcher.noticed("org/example/HiddenProbe", hidden.getClassLoader());
+    assertEquals(Collections.singletonList("Hidden"), fingerprints.identifyAll());
+  }
+
+  @Test
+  public void testObservedProbeWithoutLoaderFallsBackToOurs() {
+    // Not visible to the bootstrap loader, only to the loader the agent runs in
+    ClassArrivalWatcher watcher = new ClassArrivalWatcher();
+    WorkloadFingerprints fingerprints =
+        new WorkloadFingerprints(
+            Collections.singletonList(fingerprint("org.junit.jupiter.api.Test", 1, "JUnit")),
+            watcher);
+    fingerprints.watchProbes();
+
+    watcher.noticed("org/junit/jupiter/api/Test", null);
+    assertTrue(watcher.hasArrived("org.junit.jupiter.api.Test"));
+    assertEquals(Collections.singletonList("JUnit"), fingerprints.identifyAll());
+  }
+
+  @Test
+  public void testBuiltInProbesWatchedWithoutDiscovery() {
+    ClassArrivalWatcher watcher = new ClassArrivalWatcher();
+    WorkloadFingerprints.watchBuiltInProbes(watcher);
+
+    watcher.noticed("org/jboss/modules/Module", null);
+    // Only found through ServiceLoader, so not watched yet
+    watcher.noticed("org/example/NeverPresent", null);
+    assertTrue(watcher.hasArrived("org.jboss.modules.Module"));
+    assertFalse(watcher.hasArrived("org.example.NeverPresent"));
+  }
+
+  @Test
+  public void testServiceLoaderDiscovery() {
+    List<WorkloadFingerprint> all = WorkloadFingerprints.getInstance().getFingerprints();
+    assertTrue(all.stream().anyMatch(f -> f instanceof TestFingerprint));
+    assertEquals(
+        "org.jboss.modules.Module", all.get(0).getProbeClassName(), "built-ins keep priority");
+  }
+
+  private static WorkloadFingerprint fingerprint(String probe, int priority, String workload) {
+    return new WorkloadFingerprint() {
+      @Override
+      public String getProbeClassName() {
+        return probe;
+      }
+
+      @Override
+      public int getPriority() {
+        return priority;
+      }
+
+      @Override
+      public String identify(Class<?> probeClass) {
+        return workload;
+      }
+    };
+  }
+
+  /** Registered in META-INF/services under src/test/resources. */
+  public static final class TestFingerprint implements WorkloadFingerprint {
+    @Override
+    public String getProbeClassName() {
+      return "org.example.NeverPresent";
+    }
+
+    @Override
+    public String identify(Class<?> probeClass) {
+      return "Test";
+    }
+  }
+}
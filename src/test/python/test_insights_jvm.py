@@ -1,11 +1,14 @@
 import unittest
 import sys
 import os
+import shutil
+import time
 
-from unittest import skip
+from unittest import skip, mock
 from datetime import datetime
 sys.path.insert(0, os.path.join(os.path.dirname(__file__), '../../main/python'))
-from insights_jvm import ProcessInfo, ProcUtil, JInfoParser, get_java_args, make_report, pretty_json
+import insights_jvm
+from insights_jvm import ProcessInfo, ProcUtil, JInfoParser, get_java_args, make_report, pretty_json, enrich_all, get_extra_info, timed_out_info, ScanCache
 
 
 # Run with "pytest -v --capture=tee-sys ."
@@ -56,4 +59,203 @@ class TestMath(unittest.TestCase):
         exe = "flibble"
         nt = ProcessInfo(13457, "java", str(datetime.fromtimestamp(launch_time)), cmdline.split(), exe, 2, "9.5")
         report = make_report(nt)
-        self.assertEqual(report["jvm.heap.max"], "2048m")
\ No newline at end of file
+        self.assertEqual(report["jvm.heap.max"], "2048m")
+
+
+class TestEnrich(unittest.TestCase):
+    @staticmethod
+    def _process(pid):
+        return ProcessInfo(pid, "java", None, [], "/nonexistent/bin/java", 2, None)
+
+    def test_enrich_runs_concurrently(self):
+        def slow_extra_info(exe, pid, deadline=None, cache=None):
+            time.sleep(0.3)
+            return {"method": "version", "pid": pid}
+
+        with mock.patch.object(insights_jvm, 'get_extra_info', slow_extra_info):
+            start = time.monotonic()
+            results = enrich_all([self._process(pid) for pid in range(1, 9)], workers=8, deadline_secs=5)
+            elapsed = time.monotonic() - start
+
+        self.assertEqual(sorted(results), list(range(1, 9)))
+        self.assertEqual(results[3], {"method": "version", "pid": 3})
+        self.assertLess(elapsed, 2)
+
+    def test_enrich_reports_hung_jvm_as_timed_out(self):
+        def extra_info(exe, pid, deadline=None, cache=None):
+            if pid == 2:
+                time.sleep(2)
+            return {"method": "version"}
+
+        with mock.patch.object(insights_jvm, 'get_extra_info', extra_info):
+            start = time.monotonic()
+            results = enrich_all([self._process(pid) for pid in (1, 2, 3)], deadline_secs=0.5)
+            elapsed = time.monotonic() - start
+
+        self.assertEqual(results[1], {"method": "version"})
+        self.assertEqual(results[2], timed_out_info())
+        self.assertEqual(results[3], {"method": "version"})
+        self.assertLess(elapsed, 1.5)
+
+    def test_enrich_survives_failed_parse(self):
+        def extra_info(exe, pid, deadline=None, cache=None):
+            raise KeyError('java.vm.vendor')
+
+        with mock.patch.object(insights_jvm, 'get_extra_info', extra_info):
+            self.assertEqual(enrich_all([self._process(1)]), {1: {}})
+
+    def test_extra_info_after_deadline(self):
+        with mock.patch.object(insights_jvm, 'run_java_version') as run_java_version:
+            info = get_extra_info("/nonexistent/bin/java", 1, time.monotonic() - 1)
+        self.assertEqual(info, timed_out_info())
+        run_java_version.assert_not_called()
+
+    def test_extra_info_passes_time_left(self):
+        with mock.patch.object(insights_jvm, 'run_java_version', return_value=(False, "")) as run_java_version:
+            get_extra_info("/nonexistent/bin/java", 1, time.monotonic() + 3)
+        timeout = run_java_version.call_args[0][1]
+        self.assertGreater(timeout, 2)
+        self.assertLessEqual(timeout, 3)
+
+    def test_make_report_uses_given_extra_info(self):
+        nt = ProcessInfo(1, "java", None, ["java", "-Xmx1g", "Main"], "/nonexistent/bin/java", 2, None)
+        with mock.patch.object(insights_jvm, 'get_extra_info') as extra_info:
+            report = make_report(nt, {"method": "timeout"})
+        extra_info.assert_not_called()
+        self.assertEqual(report["method"], "timeout")
+        self.assertEqual(report["jvm.heap.max"], "1g")
+
+
+class TestScanCache(unittest.TestCase):
+    JINFO_INFO = {"method": "jinfo", "java.major.version": "17"}
+    VERSION_INFO = {"method": "version", "major_version": "17"}
+
+    def setUp(self):
+        self.dir = os.path.join(os.path.dirname(__file__), '../../../target/python-scan-cache-test', self._testMethodName)
+        shutil.rmtree(self.dir, ignore_errors=True)
+        os.makedirs(self.dir)
+        self.path = os.path.join(self.dir, 'cache', 'cache.json')
+        # Stands in for a JDK's java executable
+        self.exe = os.path.join(self.dir, 'java')
+        with open(self.exe, 'w') as f:
+            f.write('#!/bin/sh\n')
+
+    def _process(self, pid, start_ticks):
+        return ProcessInfo(pid, "java", None, [], self.exe, 2, None, start_ticks)
+
+    def _scan(self, processes, extra_info):
+        cache = ScanCache.load(self.path)
+        with mock.patch.object(insights_jvm, 'get_extra_info', side_effect=extra_info) as mocked:
+            results = enrich_all(processes, cache=cache)
+        cache.save()
+        return results, mocked.call_count
+
+    def test_process_reused_until_restart(self):
+        results, calls = self._scan([self._process(10, 500)], lambda *args: self.JINFO_INFO)
+        self.assertEqual(calls, 1)
+        self.assertEqual(results[10], self.JINFO_INFO)
+
+        results, calls = self._scan([self._process(10, 500)], lambda *args: self.fail("not cached"))
+        self.assertEqual(calls, 0)
+        self.assertEqual(results[10], self.JINFO_INFO)
+
+        # Same pid, new process
+        results, calls = self._scan([self._process(10, 900)], lambda *args: {"method": "version"})
+        self.assertEqual(calls, 1)
+        self.assertEqual(results[10], {"method": "version"})
+
+    def test_failures_not_cached(self):
+        self._scan([self._process(10, 500), self._process(11, 500)],
+                   lambda exe, pid, *args: {} if pid == 10 else timed_out_info())
+        _, calls = self._scan([self._process(10, 500), self._process(11, 500)], lambda *args: {})
+        self.assertEqual(calls, 2)
+
+    def test_exited_processes_dropped(self):
+        self._scan([self._process(10, 500), self._process(11, 500)], lambda *args: self.JINFO_INFO)
+        self._scan([self._process(11, 500)], lambda *args: self.fail("not cached"))
+        _, calls = self._scan([self._process(10, 500)], lambda *args: self.JINFO_INFO)
+        self.assertEqual(calls, 1)
+
+    def test_version_shared_across_processes(self):
+        cache = ScanCache.load(self.path)
+        with mock.patch.object(insights_jvm, 'run_java_version', return_value=(True, 'openjdk version "17.0.9"')) as run:
+            first = get_extra_info(self.exe, 10, cache=cache)
+            second = get_extra_info(self.exe, 11, cache=cache)
+        self.assertEqual(run.call_count, 1)
+        self.assertEqual(first, second)
+        self.assertEqual(first["major_version"], "17")
+
+    def test_version_redone_when_jdk_changes(self):
+        cache = ScanCache.load(self.path)
+        with mock.patch.object(insights_jvm, 'run_java_version', return_value=(True, 'openjdk version "17.0.9"')):
+            get_extra_info(self.exe, 10, cache=cache)
+        cache.save()
+
+        # Upgraded in place
+        os.remove(self.exe)
+        with open(self.exe, 'w') as f:
+            f.write('#!/bin/sh\n# 21\n')
+        mtime = os.stat(self.exe).st_mtime + 10
+        os.utime(self.exe, (mtime, mtime))
+        cache = ScanCache.load(self.path)
+        with mock.patch.object(insights_jvm, 'run_java_version', return_value=(True, 'openjdk version "21.0.1"')) as run:
+            info = get_extra_info(self.exe, 10, cache=cache)
+        self.assertEqual(run.call_count, 1)
+        self.assertEqual(info["major_version"], "21")
+
+    def test_version_fallback_not_cached_per_process(self):
+        self._scan([self._process(10, 500)], lambda *args: self.VERSION_INFO)
+        _, calls = self._scan([self._process(10, 500)], lambda *args: self.JINFO_INFO)
+        self.assertEqual(calls, 1)
+        _, calls = self._scan([self._process(10, 500)], lambda *args: self.fail("not cached"))
+        self.assertEqual(calls, 0)
+
+    def test_cache_is_private(self):
+        self._scan([self._process(10, 500)], lambda *args: self.JINFO_INFO)
+        self.assertEqual(os.stat(os.path.dirname(self.path)).st_mode & 0o777, 0o700)
+        self.assertEqual(os.stat(self.path).st_mode & 0o777, 0o600)
+        self.assertEqual(os.listdir(os.path.dirname(self.path)), ['cache.json'])
+
+    def test_open_directory_refused(self):
+        self._scan([self._process(10, 500)], lambda *args: self.JINFO_INFO)
+        os.chmod(os.path.dirname(self.path), 0o755)
+        with open(self.path) as f:
+            saved = f.read()
+        _, calls = self._scan([self._process(11, 500)], lambda *args: self.JINFO_INFO)
+        # Neither read nor written
+        self.assertEqual(calls, 1)
+        self.assertIsNone(ScanCache.load(self.path).get_process("10:500"))
+        with open(self.path) as f:
+            self.assertEqual(f.read(), saved)
+
+    def test_symlinks_not_followed(self):
+        elsewhere = os.path.join(self.dir, 'elsewhere.json')
+        with open(elsewhere, 'w') as f:
+            f.write('{}')
+        os.makedirs(os.path.dirname(self.path), mode=0o700)
+        os.symlink(elsewhere, self.path)
+        self._scan([self._process(10, 500)], lambda *args: self.JINFO_INFO)
+        # The link is replaced, not written through
+        self.assertFalse(os.path.islink(self.path))
+        with open(elsewhere) as f:
+            self.assertEqual(f.read(), '{}')
+
+        # Nor is a linked directory used
+        linked = os.path.join(self.dir, 'linked')
+        os.symlink(os.path.dirname(self.path), linked)
+        self.assertIsNone(ScanCache.load(os.path.join(linked, 'cache.json')).get_process("10:500"))
+        self.assertEqual(ScanCache.load(self.path).get_process("10:500"), self.JINFO_INFO)
+
+    def test_corrupt_cache_ignored(self):
+        os.makedirs(os.path.dirname(self.path), mode=0o700)
+        with open(self.path, 'w') as f:
+            f.write('{not json')
+        results, calls = self._scan([self._process(10, 500)], lambda *args: self.JINFO_INFO)
+        self.assertEqual(calls, 1)
+        self.assertEqual(results[10], self.JINFO_INFO)
+        self.assertEqual(ScanCache.load(self.path).get_process("10:500"), self.JINFO_INFO)
+
+    def test_unknown_start_time_not_cached(self):
+        self._scan([self._process(10, None)], lambda *args: self.JINFO_INFO)
+        _, calls = self._scan([self._process(10, None)], lambda *args: self.JINFO_INFO)
+        self.assertEqual(calls, 1)